@@ -0,0 +1,74 @@
+package top.cokernut.customview.view;
+
+import android.graphics.Rect;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * 动画View只刷新变化的区域，需要在设备上运行
+ */
+@RunWith(AndroidJUnit4.class)
+public class DamageTrackerTest {
+
+    @Test
+    public void cellView_invalidatesOnlyChangedStrip() throws Exception {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                CellView view = new CellView(InstrumentationRegistry.getTargetContext());
+                layout(view, 400, 200);
+                view.setValue(0.5f);
+                view.setValue(0.505f);
+                Rect damage = view.getDamageTracker().getPendingDamage();
+                assertFalse(damage.isEmpty());
+                // 0到0.505的电量区域加上文字，远小于整个View
+                assertTrue(damage.width() * damage.height() < 400 * 200 / 2);
+            }
+        });
+    }
+
+    @Test
+    public void wifiView_invalidatesOnlyRevealedArc() throws Exception {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                WifiView view = new WifiView(InstrumentationRegistry.getTargetContext());
+                layout(view, 300, 300);
+                view.setAnimatedValue(1);
+                assertTrue(view.getDamageTracker().getPendingDamage().isEmpty());
+                view.setAnimatedValue(2);
+                Rect damage = view.getDamageTracker().getPendingDamage();
+                assertFalse(damage.isEmpty());
+                // 第一圈弧线在中心上方
+                assertTrue(damage.bottom <= 150);
+                assertTrue(damage.width() < 300);
+            }
+        });
+    }
+
+    @Test
+    public void simpleProgressView_invalidatesOnlyRing() throws Exception {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                SimpleProgressView view = new SimpleProgressView(InstrumentationRegistry.getTargetContext());
+                layout(view, 600, 200);
+                view.setStartAngle(90f);
+                Rect damage = view.getDamageTracker().getPendingDamage();
+                assertTrue(damage.right <= 200);
+            }
+        });
+    }
+
+    private static void layout(View view, int width, int height) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, width, height);
+    }
+}
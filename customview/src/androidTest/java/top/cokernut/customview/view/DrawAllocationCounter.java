@@ -0,0 +1,107 @@
+package top.cokernut.customview.view;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.view.View;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 统计View绘制过程中分配的对象数量：把View布局到固定大小，在主线程上连续画到离屏Bitmap上
+ */
+public class DrawAllocationCounter {
+
+    public interface FrameCallback {
+        /**
+         * 每一帧绘制之前调用，用来推进动画状态，本身不能分配对象
+         */
+        void onFrame(int frame);
+    }
+
+    public interface ViewFactory<T extends View> {
+        /**
+         * 在主线程上创建并设置好要测试的View
+         */
+        T create(Context context);
+    }
+
+    public interface ViewFrameCallback<T extends View> {
+        /**
+         * 每一帧绘制之前调用，用来推进动画状态，本身不能分配对象
+         */
+        void onFrame(T view, int frame);
+    }
+
+    private static final int WARM_UP_FRAMES = 3;
+
+    private DrawAllocationCounter() {
+    }
+
+    /**
+     * @return frames帧绘制（包括callback）期间主线程分配的对象数量
+     */
+    public static int countAllocations(final View view, final int width, final int height, final int frames,
+                                       final FrameCallback callback) {
+        final int[] result = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = countOnMainThread(view, width, height, frames, callback);
+            }
+        });
+        return result[0];
+    }
+
+    /**
+     * 在主线程上用factory创建View，断言frames帧绘制期间没有分配对象
+     *
+     * @return 创建的View，用来检查其他状态
+     */
+    public static <T extends View> T assertNoAllocations(final ViewFactory<T> factory, int width, int height,
+                                                         int frames, final ViewFrameCallback<T> callback) {
+        final View[] created = new View[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                created[0] = factory.create(InstrumentationRegistry.getTargetContext());
+            }
+        });
+        @SuppressWarnings("unchecked")
+        final T view = (T) created[0];
+        int count = countAllocations(view, width, height, frames, new FrameCallback() {
+            @Override
+            public void onFrame(int frame) {
+                callback.onFrame(view, frame);
+            }
+        });
+        assertEquals("allocations in " + frames + " frames", 0, count);
+        return view;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int countOnMainThread(View view, int width, int height, int frames, FrameCallback callback) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, width, height);
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        // 第一次绘制时字体、着色器等缓存的初始化不计算在内
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            callback.onFrame(i);
+            view.draw(canvas);
+        }
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < frames; i++) {
+            callback.onFrame(i);
+            view.draw(canvas);
+        }
+        Debug.stopAllocCounting();
+        int count = Debug.getThreadAllocCount();
+        bitmap.recycle();
+        return count;
+    }
+}
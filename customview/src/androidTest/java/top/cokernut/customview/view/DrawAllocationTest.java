@@ -0,0 +1,135 @@
+package top.cokernut.customview.view;
+
+import android.content.Context;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 各个动画View的绘制过程不分配对象，每个用例是一组参数，需要在设备上运行
+ */
+@RunWith(Parameterized.class)
+public class DrawAllocationTest {
+
+    /**
+     * 一个用例：创建并设置View，每一帧推进动画状态，绘制结束后可以再检查View的状态
+     */
+    abstract static class DrawCase<T extends View> implements DrawAllocationCounter.ViewFactory<T>,
+            DrawAllocationCounter.ViewFrameCallback<T> {
+        final String mName;
+        final int mWidth;
+        final int mHeight;
+        final int mFrames;
+
+        DrawCase(String name, int width, int height, int frames) {
+            mName = name;
+            mWidth = width;
+            mHeight = height;
+            mFrames = frames;
+        }
+
+        void verify(T view) {
+        }
+
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Object[]> cases() {
+        return Arrays.asList(new Object[][]{
+                // 横向和竖向的电池，电量从0%到100%
+                {new DrawCase<CellView>("CellView horizontal", 400, 200, 360) {
+                    @Override public CellView create(Context context) { return new CellView(context); }
+                    @Override public void onFrame(CellView view, int frame) { view.setValue((float) frame / mFrames); }
+                }},
+                {new DrawCase<CellView>("CellView vertical", 200, 400, 360) {
+                    @Override public CellView create(Context context) { return new CellView(context); }
+                    @Override public void onFrame(CellView view, int frame) { view.setValue((float) frame / mFrames); }
+                }},
+                {new DrawCase<CellView>("CellView render cache", 400, 200, 360) {
+                    @Override public CellView create(Context context) {
+                        CellView view = new CellView(context);
+                        view.setRenderCacheEnabled(true);
+                        return view;
+                    }
+                    @Override public void onFrame(CellView view, int frame) { view.setValue((float) frame / mFrames); }
+                    // 静态部分缓存为ALPHA_8，每个像素一个字节
+                    @Override void verify(CellView view) { assertEquals(400 * 200, view.getRenderCacheByteCount()); }
+                }},
+                // 0到4圈弧线循环显示
+                {new DrawCase<WifiView>("WifiView", 300, 300, 240) {
+                    @Override public WifiView create(Context context) { return new WifiView(context); }
+                    @Override public void onFrame(WifiView view, int frame) { view.setAnimatedValue(frame % 5); }
+                }},
+                // 单色和多色两种绘制路径
+                {new DrawCase<SimpleProgressView>("SimpleProgressView", 200, 200, 240) {
+                    @Override public SimpleProgressView create(Context context) { return new SimpleProgressView(context); }
+                    @Override public void onFrame(SimpleProgressView view, int frame) { view.setStartAngle(360f * frame / mFrames); }
+                }},
+                {new DrawCase<SimpleProgressView>("SimpleProgressView colors", 200, 200, 240) {
+                    @Override public SimpleProgressView create(Context context) {
+                        SimpleProgressView view = new SimpleProgressView(context);
+                        view.setProgressColors(0xFF06B6F8, 0xFFCDE815, 0xFFED0A70);
+                        return view;
+                    }
+                    @Override public void onFrame(SimpleProgressView view, int frame) { view.setStartAngle(360f * frame / mFrames); }
+                }},
+                // 多层波纹每60帧移动一个周期
+                {new DrawCase<RippleView>("RippleView", 300, 300, 240) {
+                    @Override public RippleView create(Context context) {
+                        RippleView view = new RippleView(context);
+                        view.addLayer(0.3f, 0.6f, 0.5f);
+                        view.addLayer(0.7f, 0.3f, 0.3f);
+                        return view;
+                    }
+                    @Override public void onFrame(RippleView view, int frame) { view.setPhase(frame / 60f % 1f); }
+                }},
+                // 液面从底部升到顶部，只修改Shader的矩阵
+                {new DrawCase<RippleView>("RippleView shader", 300, 300, 240) {
+                    @Override public RippleView create(Context context) {
+                        RippleView view = new RippleView(context);
+                        view.setRenderMode(RippleView.RENDER_MODE_SHADER);
+                        view.setShape(RippleView.SHAPE_CIRCLE);
+                        view.setWavelength(120);
+                        view.addLayer(0.5f, 0.6f, 0.5f);
+                        return view;
+                    }
+                    @Override public void onFrame(RippleView view, int frame) {
+                        view.setPhase(frame / 60f % 1f);
+                        view.setLevel((float) frame / mFrames, false);
+                    }
+                }},
+                // 形成、下落、溅开的完整周期
+                {new DrawCase<WaterDropView>("WaterDropView", 200, 400, 240) {
+                    @Override public WaterDropView create(Context context) { return new WaterDropView(context); }
+                    @Override public void onFrame(WaterDropView view, int frame) { view.setProgress((float) frame / mFrames); }
+                }},
+        });
+    }
+
+    private final DrawCase<?> mCase;
+
+    public DrawAllocationTest(DrawCase<?> drawCase) {
+        mCase = drawCase;
+    }
+
+    @Test
+    public void onDraw_doesNotAllocate() throws Exception {
+        run(mCase);
+    }
+
+    private static <T extends View> void run(DrawCase<T> drawCase) {
+        drawCase.verify(DrawAllocationCounter.assertNoAllocations(drawCase, drawCase.mWidth, drawCase.mHeight,
+                drawCase.mFrames, drawCase));
+    }
+}
@@ -0,0 +1,68 @@
+package top.cokernut.customview.view;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * FrameClock的分发和FrameClockAnimation的自动暂停，需要在设备上运行
+ */
+@RunWith(AndroidJUnit4.class)
+public class FrameClockTest {
+
+    @Test
+    public void callbacks_receiveFramesUntilRemoved() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        final FrameClock.Callback callback = new FrameClock.Callback() {
+            @Override
+            public void onFrame(long frameTimeNanos) {
+                latch.countDown();
+            }
+        };
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                FrameClock.getInstance().addCallback(callback);
+            }
+        });
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                FrameClock.getInstance().removeCallback(callback);
+                assertEquals(0, FrameClock.getInstance().getCallbackCount());
+            }
+        });
+    }
+
+    @Test
+    public void detachedView_doesNotSubscribe() throws Exception {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                View view = new View(InstrumentationRegistry.getTargetContext());
+                FrameClockAnimation animation = new FrameClockAnimation(view, new FrameClockAnimation.Listener() {
+                    @Override
+                    public boolean onAnimationFrame(long elapsedMillis) {
+                        return true;
+                    }
+                });
+                int before = FrameClock.getInstance().getCallbackCount();
+                animation.start();
+                // 没有添加到窗口的View不会订阅，添加到窗口后自动开始
+                assertTrue(animation.isRunning());
+                assertEquals(before, FrameClock.getInstance().getCallbackCount());
+                animation.stop();
+                assertFalse(animation.isRunning());
+            }
+        });
+    }
+}
@@ -1,8 +1,5 @@
 package top.cokernut.customview.view;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
@@ -11,7 +8,6 @@ import android.graphics.Paint;
 import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.view.View;
-import android.view.animation.LinearInterpolator;
 
 import top.cokernut.customview.R;
 
@@ -23,13 +19,62 @@ public class CellView extends View {
     private float mLineSize = 4f; // 画笔大小（线的粗细）
     private int mLineColor = Color.WHITE; //边缘线和字体颜色的颜色
 
-    private Paint mPaint;
+    /**
+     * 0%到100%的文字，所有CellView共用，绘制时不需要拼接字符串
+     */
+    private static final String[] PERCENT_LABELS = new String[101];
+
+    static {
+        for (int i = 0; i < PERCENT_LABELS.length; i++) {
+            PERCENT_LABELS[i] = i + "%";
+        }
+    }
+
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
     private float mWidth;
     private float mHeight;
-    private Paint mTextPaint;
     private String mText;
-    private ValueAnimator mAnimator;
+    private static final long ANIM_DURATION = 6000;
+    private final DamageTracker mDamageTracker = new DamageTracker(this);
+    /**
+     * 充电动画，由共用的FrameClock驱动
+     */
+    private final FrameClockAnimation mAnimation = new FrameClockAnimation(this, new FrameClockAnimation.Listener() {
+        @Override
+        public boolean onAnimationFrame(long elapsedMillis) {
+            setValue(Math.min(1f, (float) elapsedMillis / ANIM_DURATION));
+            return elapsedMillis < ANIM_DURATION;
+        }
+    });
     private float mValue = 0f;
+    /**
+     * 绘制用的几何数据，只在大小或线宽变化时重新计算：
+     * 电量区域在电量为0和100%时的边界、电池头和外框
+     */
+    private boolean mHorizontal;
+    private float mAmountLeft;
+    private float mAmountTop;
+    private float mAmountRight;
+    private float mAmountBottom;
+    private final RectF mHeadRect = new RectF();
+    private final RectF mFrameRect = new RectF();
+    private float mFrameRadius;
+    private float mTextX;
+    private float mTextY;
+    /**
+     * 最宽的文字"100%"占用的区域，电量文字变化时只刷新这个区域
+     */
+    private float mTextLeft;
+    private float mTextTop;
+    private float mTextRight;
+    private float mTextBottom;
+    /**
+     * 绘制缓存模式：电池头和外框只在大小或线宽变化时画一次，每一帧只合成缓存
+     */
+    private boolean mRenderCacheEnabled;
+    private final RenderCache mFrameCache = new RenderCache();
+    private final Paint mCachePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
     public CellView(Context context) {
         super(context);
@@ -52,6 +97,16 @@ public class CellView extends View {
         mLineColor = a.getColor(R.styleable.CellView_amountColor, mLineColor);
         mLineSize = a.getDimension(R.styleable.CellView_lineSize, mLineSize);
         a.recycle();
+
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+        mTextPaint.setTextSize(dip2px(20));
+        updatePaints();
+    }
+
+    private void updatePaints() {
+        mPaint.setStrokeWidth(mLineSize);
+        mTextPaint.setStrokeWidth(mLineSize);
+        mTextPaint.setColor(mLineColor);
     }
 
     /**
@@ -60,58 +115,114 @@ public class CellView extends View {
      * getMeasuredWidth()：对View上的内容进行测量后得到的View内容占据的宽度。
      * 很简单，getWidth()就是View显示之后的width，而getMeasuredWidth，
      * 从前面的源代码就可以看出来其实是在measure里面传入的参数，具体是否一样完全要看程序最后的计算。
+     * 绘制用的几何数据按显示的宽高计算，只在大小变化时计算一次
      */
-    // 如果对View的宽高进行修改了之后，不要调用super.onMeasure(widthMeasureSpec,heightMeasureSpec);
-    // 要调用setMeasuredDimension(widthsize,heightsize); 这个函数。
     @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-        mHeight = getMeasuredHeight();
-        mWidth = getMeasuredWidth();
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mWidth = w;
+        mHeight = h;
+        updateGeometry();
+        mFrameCache.invalidate();
+    }
+
+    /**
+     * 按当前大小和线宽计算绘制用的几何数据
+     */
+    private void updateGeometry() {
+        mHorizontal = mWidth / 2 > mHeight / 2;
+        mAmountLeft = mWidth / 4;
+        mAmountTop = mHeight / 4;
+        mAmountRight = mWidth / 4 * 3;
+        mAmountBottom = mHeight / 4 * 3;
+        if (mHorizontal) {
+            mHeadRect.set(mWidth / 4 * 3, mHeight / 2 - 4 * mLineSize, mWidth / 4 * 3 + 4 * mLineSize, mHeight / 2 + 4 * mLineSize);
+        } else {
+            mHeadRect.set(mWidth / 2 - 4 * mLineSize, mHeight / 4 - 4 * mLineSize, mWidth / 2 + 4 * mLineSize, mHeight / 4);
+        }
+        mFrameRect.set(mWidth / 4 - mLineSize, mHeight / 4 - mLineSize, mWidth / 4 * 3 + mLineSize, mHeight / 4 * 3 + mLineSize);
+        mFrameRadius = mLineSize * 2;
+        mTextX = mWidth / 2;
+        mTextY = mHeight / 2 + 4 * mLineSize;
+        float halfTextWidth = mTextPaint.measureText(PERCENT_LABELS[100]) / 2;
+        mTextLeft = mTextX - halfTextWidth;
+        mTextTop = mTextY + mTextPaint.ascent();
+        mTextRight = mTextX + halfTextWidth;
+        mTextBottom = mTextY + mTextPaint.descent();
     }
 
+    /**
+     * 绘制过程中不创建任何对象：画笔、几何数据和文字都已经准备好
+     */
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        initPaint();
-        if (mWidth/2 > mHeight/2) {
-            mPaint.setColor(Color.GREEN);
-            mPaint.setStyle(Paint.Style.FILL_AND_STROKE);
-            canvas.drawRect(mWidth/4, mHeight/4, mWidth/4 + mValue*mWidth/2, mHeight/4*3, mPaint);
-            mPaint.setColor(mLineColor);
-            mPaint.setStyle(Paint.Style.FILL);
-            canvas.drawRect(mWidth/4*3, mHeight/2-4*mLineSize, mWidth/4*3+4*mLineSize, mHeight/2+4*mLineSize, mPaint);
-            mPaint.setStyle(Paint.Style.STROKE);
-            RectF rectF = new RectF(mWidth/4-mLineSize, mHeight/4-mLineSize, mWidth/4*3+mLineSize, mHeight/4*3+mLineSize);
-            canvas.drawRoundRect(rectF, mLineSize*2, mLineSize*2, mPaint);
+        mPaint.setColor(Color.GREEN);
+        mPaint.setStyle(Paint.Style.FILL_AND_STROKE);
+        if (mHorizontal) {
+            canvas.drawRect(mAmountLeft, mAmountTop, mAmountLeft + mValue * mWidth / 2, mAmountBottom, mPaint);
+        } else {
+            canvas.drawRect(mAmountLeft, mAmountBottom - mValue * mHeight / 2, mAmountRight, mAmountBottom, mPaint);
+        }
+        if (mRenderCacheEnabled && getWidth() > 0 && getHeight() > 0) {
+            if (!mFrameCache.isValid()) {
+                // 缓存中只保存形状，颜色在合成时使用
+                mPaint.setColor(Color.BLACK);
+                drawFrame(mFrameCache.begin(getWidth(), getHeight()));
+            }
+            mCachePaint.setColor(mLineColor);
+            mFrameCache.draw(canvas, mCachePaint);
         } else {
-            mPaint.setColor(Color.GREEN);
-            mPaint.setStyle(Paint.Style.FILL_AND_STROKE);
-            canvas.drawRect(mWidth/4, mHeight/4*3-mValue*mHeight/2, mWidth/4*3, mHeight/4*3, mPaint);
             mPaint.setColor(mLineColor);
-            mPaint.setStyle(Paint.Style.FILL);
-            canvas.drawRect(mWidth/2-4*mLineSize, mHeight/4-4*mLineSize, mWidth/2+4*mLineSize, mHeight/4, mPaint);
-            mPaint.setStyle(Paint.Style.STROKE);
-            RectF rectF = new RectF(mWidth/4-mLineSize, mHeight/4-mLineSize, mWidth/4*3+mLineSize, mHeight/4*3+mLineSize);
-            canvas.drawRoundRect(rectF, mLineSize*2, mLineSize*2, mPaint);
+            drawFrame(canvas);
         }
-        String mText = String.valueOf((int) (mValue * 100)) + "%";
-        canvas.drawText(mText, mWidth / 2, mHeight / 2 + 4*mLineSize, mTextPaint);
+        canvas.drawText(getPercentLabel(mValue), mTextX, mTextY, mTextPaint);
+        mDamageTracker.drawOverlay(canvas);
     }
 
-    private void initPaint() {
-        mPaint =  new Paint();
-        mPaint.setColor(mLineColor);
-        mPaint.setAntiAlias(true);
+    /**
+     * 绘制不随电量变化的电池头和外框
+     */
+    private void drawFrame(Canvas canvas) {
         mPaint.setStyle(Paint.Style.FILL);
-        mPaint.setStrokeWidth(mLineSize);
+        canvas.drawRect(mHeadRect, mPaint);
+        mPaint.setStyle(Paint.Style.STROKE);
+        canvas.drawRoundRect(mFrameRect, mFrameRadius, mFrameRadius, mPaint);
+    }
 
-        mTextPaint = new Paint();
-        mTextPaint.setAntiAlias(true);
-        mTextPaint.setTextAlign(Paint.Align.CENTER);
-        mTextPaint.setStrokeWidth(mLineSize);
-        mTextPaint.setColor(mLineColor);
-        mTextPaint.setTextSize(dip2px(20));
+    /**
+     * 开启绘制缓存：静态部分画到ALPHA_8的Bitmap中，占用宽x高字节的内存，
+     * 适合没有硬件加速或同时显示很多电池的界面
+     */
+    public void setRenderCacheEnabled(boolean enabled) {
+        if (mRenderCacheEnabled == enabled) return;
+        mRenderCacheEnabled = enabled;
+        if (!enabled) {
+            mFrameCache.release();
+        }
+        invalidate();
+    }
+
+    public boolean isRenderCacheEnabled() {
+        return mRenderCacheEnabled;
+    }
+
+    /**
+     * @return 绘制缓存占用的内存，单位字节
+     */
+    public int getRenderCacheByteCount() {
+        return mFrameCache.getByteCount();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mFrameCache.release();
+    }
+
+    private static String getPercentLabel(float value) {
+        int percent = (int) (value * 100);
+        return PERCENT_LABELS[Math.max(0, Math.min(100, percent))];
     }
 
     public int dip2px(float dpValue) {
@@ -121,41 +232,61 @@ public class CellView extends View {
 
     public void startAnim() {
         stopAnim();
-        startViewAnim(0f, 1f, 6000);
+        mAnimation.start();
     }
 
-    public void stopAnim() {
-        if (mAnimator != null) {
-            clearAnimation();
-            mAnimator.setRepeatCount(0);
-            mAnimator.cancel();
-            mAnimator.end();
-            mValue = 0;
-            postInvalidate();
-        }
+    /**
+     * 直接设置电量，不播放动画
+     *
+     * @param value 0到1之间
+     */
+    public void setValue(float value) {
+        if (value == mValue) return;
+        float oldValue = mValue;
+        mValue = value;
+        invalidateValueChange(oldValue, value);
     }
 
-    private ValueAnimator startViewAnim(float start, float end, int time) {
-        mAnimator = ValueAnimator.ofFloat(start, end);
-        mAnimator.setDuration(time);
-        mAnimator.setInterpolator(new LinearInterpolator());
-        mAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                mValue = (float) animation.getAnimatedValue();
-                invalidate();
-            }
-        });
-        mAnimator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-            }
-        });
-        if (!mAnimator.isRunning()) {
-            mAnimator.start();
+    public float getValue() {
+        return mValue;
+    }
+
+    /**
+     * 只刷新电量区域中变化的一条和变化了的文字
+     */
+    private void invalidateValueChange(float oldValue, float newValue) {
+        float min = Math.min(oldValue, newValue);
+        float max = Math.max(oldValue, newValue);
+        // 电量区域有描边，再多一个像素留给抗锯齿
+        float outset = mLineSize / 2 + 1;
+        if (mHorizontal) {
+            invalidateRect(mAmountLeft + min * mWidth / 2 - outset, mAmountTop - outset,
+                    mAmountLeft + max * mWidth / 2 + outset, mAmountBottom + outset);
+        } else {
+            invalidateRect(mAmountLeft - outset, mAmountBottom - max * mHeight / 2 - outset,
+                    mAmountRight + outset, mAmountBottom - min * mHeight / 2 + outset);
+        }
+        if (getPercentLabel(oldValue) != getPercentLabel(newValue)) {
+            invalidateRect(mTextLeft - 1, mTextTop - 1, mTextRight + 1, mTextBottom + 1);
         }
-        return mAnimator;
+    }
+
+    private void invalidateRect(float left, float top, float right, float bottom) {
+        mDamageTracker.invalidate((int) Math.floor(left), (int) Math.floor(top),
+                (int) Math.ceil(right), (int) Math.ceil(bottom));
+    }
+
+    /**
+     * @return 局部刷新的统计，可以查看每秒刷新的像素数
+     */
+    public DamageTracker getDamageTracker() {
+        return mDamageTracker;
+    }
+
+    public void stopAnim() {
+        mAnimation.stop();
+        mValue = 0;
+        postInvalidate();
     }
 
     public String getText() {
@@ -180,6 +311,10 @@ public class CellView extends View {
 
     public void setLineSize(float size) {
         mLineSize = size;
+        updatePaints();
+        updateGeometry();
+        mFrameCache.invalidate();
+        invalidate();
     }
 
     public int getLineColor() {
@@ -188,5 +323,7 @@ public class CellView extends View {
 
     public void setLineColor(int color) {
         mLineColor = color;
+        updatePaints();
+        invalidate();
     }
 }
@@ -0,0 +1,128 @@
+package top.cokernut.customview.view;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.view.View;
+
+/**
+ * 动画View的局部刷新：View计算每一帧变化的区域，通过这里调用invalidate(l, t, r, b)，
+ * 同时统计每秒刷新的像素数，打开调试覆盖层时在onDraw最后把本帧刷新的区域标出来。
+ * 没有硬件加速时只有变化的区域会重新绘制；有硬件加速时系统会重绘整个View，统计仍然有效。
+ * 只能在主线程使用
+ */
+public class DamageTracker {
+    private static boolean sDebugOverlayEnabled;
+    private static final Counter sTotal = new Counter();
+    private static Paint sOverlayPaint;
+
+    private final View mView;
+    private final Counter mCounter = new Counter();
+    /**
+     * 上一次绘制之后刷新过的区域，调试覆盖层使用
+     */
+    private final Rect mPendingDamage = new Rect();
+
+    public DamageTracker(View view) {
+        mView = view;
+    }
+
+    /**
+     * 打开或关闭所有View的调试覆盖层，刷新过的区域会用半透明的红色标出
+     */
+    public static void setDebugOverlayEnabled(boolean enabled) {
+        sDebugOverlayEnabled = enabled;
+    }
+
+    public static boolean isDebugOverlayEnabled() {
+        return sDebugOverlayEnabled;
+    }
+
+    /**
+     * @return 所有View在上一秒刷新的像素数
+     */
+    public static long getTotalPixelsPerSecond() {
+        return sTotal.getPerSecond();
+    }
+
+    /**
+     * 刷新View中的一个区域，超出View的部分会被裁掉
+     */
+    public void invalidate(int left, int top, int right, int bottom) {
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(mView.getWidth(), right);
+        bottom = Math.min(mView.getHeight(), bottom);
+        if (left >= right || top >= bottom) return;
+        long pixels = (long) (right - left) * (bottom - top);
+        mCounter.add(pixels);
+        sTotal.add(pixels);
+        mPendingDamage.union(left, top, right, bottom);
+        mView.invalidate(left, top, right, bottom);
+    }
+
+    /**
+     * 刷新整个View
+     */
+    public void invalidateAll() {
+        invalidate(0, 0, mView.getWidth(), mView.getHeight());
+    }
+
+    /**
+     * 在View的onDraw最后调用，打开调试覆盖层时标出本帧刷新的区域
+     */
+    public void drawOverlay(Canvas canvas) {
+        if (sDebugOverlayEnabled && !mPendingDamage.isEmpty()) {
+            if (sOverlayPaint == null) {
+                sOverlayPaint = new Paint();
+                sOverlayPaint.setColor(0x40FF0000);
+            }
+            canvas.drawRect(mPendingDamage, sOverlayPaint);
+        }
+        mPendingDamage.setEmpty();
+    }
+
+    /**
+     * @return 上一次绘制之后刷新过的区域，测试使用
+     */
+    Rect getPendingDamage() {
+        return mPendingDamage;
+    }
+
+    /**
+     * @return 这个View在上一秒刷新的像素数
+     */
+    public long getPixelsPerSecond() {
+        return mCounter.getPerSecond();
+    }
+
+    /**
+     * 按秒统计的计数器，保存上一个完整的一秒内的总数
+     */
+    private static final class Counter {
+        private long mWindowStart;
+        private long mWindowCount;
+        private long mLastSecondCount;
+
+        void add(long count) {
+            roll();
+            mWindowCount += count;
+        }
+
+        long getPerSecond() {
+            roll();
+            return mLastSecondCount;
+        }
+
+        private void roll() {
+            long now = SystemClock.uptimeMillis();
+            long elapsed = now - mWindowStart;
+            if (elapsed < 1000) return;
+            // 超过两秒没有刷新时上一秒的数量为0
+            mLastSecondCount = elapsed < 2000 ? mWindowCount : 0;
+            mWindowStart = now;
+            mWindowCount = 0;
+        }
+    }
+}
@@ -2,41 +2,53 @@ package top.cokernut.customview.view;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.os.Build;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import top.cokernut.customview.R;
 
 /**
  * 流式布局
  */
 public class FlowLayout extends ViewGroup {
-    private static final int LEFT = -1;
-    private static final int CENTER = 0;
-    private static final int RIGHT = 1;
-
+    private int mGravity;
+    private int mAlignItems;
+    private int mHorizontalSpacing;
+    private int mVerticalSpacing;
+    private int mMaxLines;
+    private OnOverflowListener mOnOverflowListener;
     /**
-     * 存储所有的View，按行记录
+     * 上一次回调时显示的child数量和child总数，-1表示还没有回调过
      */
-    private List<List<View>> mAllViews = new ArrayList<List<View>>();
+    private int mLastVisibleCount = -1;
+    private int mLastTotalCount = -1;
     /**
-     * 记录每一行的最大高度
+     * 换行和定位都交给engine计算，onMeasure生成行表，onLayout直接使用
      */
-    private List<Integer> mLineHeight = new ArrayList<Integer>();
-    protected List<Integer> mLineWidth = new ArrayList<Integer>();
-    private int mGravity;
-    // 存储每一行所有的childView
-    private List<View> lineViews = new ArrayList<>();
+    private FlowLayoutEngine mEngine = new FlowLayoutEngine();
+    /**
+     * mEngine中是预先计算好的结果，宽度和child都匹配时onMeasure直接使用，不再重新换行
+     */
+    private boolean mPrecomputed;
+    /**
+     * 预先计算的结果已经完成过一次布局，之后child请求重新布局或内容变化时不再使用
+     */
+    private boolean mPrecomputedLaidOut;
+    private int mMeasureCacheHitCount;
+    private int mMeasureCacheMissCount;
 
     public FlowLayout(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.TagFlowLayout);
-        mGravity = ta.getInt(R.styleable.TagFlowLayout_gravity,LEFT);
+        TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.FlowLayout);
+        mGravity = ta.getInt(R.styleable.FlowLayout_gravity, FlowLayoutEngine.LEFT);
+        mAlignItems = ta.getInt(R.styleable.FlowLayout_flow_align_items, FlowLayoutEngine.ALIGN_TOP);
+        mHorizontalSpacing = ta.getDimensionPixelSize(R.styleable.FlowLayout_flow_horizontal_spacing, 0);
+        mVerticalSpacing = ta.getDimensionPixelSize(R.styleable.FlowLayout_flow_vertical_spacing, 0);
+        mMaxLines = ta.getInt(R.styleable.FlowLayout_flow_max_lines, 0);
         ta.recycle();
+        configureEngine(mEngine);
     }
 
     public FlowLayout(Context context, AttributeSet attrs) {
@@ -47,10 +59,9 @@ public class FlowLayout extends ViewGroup {
         this(context, null);
     }
 
-    //因为我们只需要支持margin，所以直接使用系统的MarginLayoutParams
     @Override
     public LayoutParams generateLayoutParams(AttributeSet attrs) {
-        return new MarginLayoutParams(getContext(), attrs);
+        return new LayoutParams(getContext(), attrs);
     }
 
     @Override
@@ -60,8 +71,57 @@ public class FlowLayout extends ViewGroup {
 
 
     @Override
-    protected LayoutParams generateLayoutParams(LayoutParams p) {
-        return new MarginLayoutParams(p);
+    protected LayoutParams generateLayoutParams(ViewGroup.LayoutParams p) {
+        if (p instanceof MarginLayoutParams) {
+            return new LayoutParams((MarginLayoutParams) p);
+        }
+        return new LayoutParams(p);
+    }
+
+    @Override
+    protected boolean checkLayoutParams(ViewGroup.LayoutParams p) {
+        return p instanceof LayoutParams;
+    }
+
+    /**
+     * 支持margin，同时保存child上一次测量使用的MeasureSpec，MeasureSpec和内容都没有变化时不再重新测量
+     */
+    public static class LayoutParams extends MarginLayoutParams {
+        private int mContentVersion;
+        private int mMeasuredVersion = -1;
+        private int mMeasuredWidthSpec;
+        private int mMeasuredHeightSpec;
+        /**
+         * TagFlowLayout使用：标签对应adapter中的position、创建标签View的adapter类型和view type，
+         * 以及标签View是否由onCreateView创建、可以直接重新绑定
+         */
+        int mPosition = -1;
+        Class<?> mAdapterClass;
+        int mViewType;
+        boolean mRecyclable;
+
+        public LayoutParams(Context c, AttributeSet attrs) {
+            super(c, attrs);
+        }
+
+        public LayoutParams(int width, int height) {
+            super(width, height);
+        }
+
+        public LayoutParams(MarginLayoutParams source) {
+            super(source);
+        }
+
+        public LayoutParams(ViewGroup.LayoutParams source) {
+            super(source);
+        }
+
+        /**
+         * child的内容发生了变化但没有调用requestLayout时调用，下一次测量时不再使用缓存
+         */
+        public void notifyContentChanged() {
+            mContentVersion++;
+        }
     }
 
     /**
@@ -77,145 +137,318 @@ public class FlowLayout extends ViewGroup {
         int widthSize = MeasureSpec.getSize(widthMeasureSpec);
         int heightMode = MeasureSpec.getMode(heightMeasureSpec);
         int heightSize = MeasureSpec.getSize(heightMeasureSpec);
-        // 如果是warp_content情况下，记录宽和高
-        int width = 0;
-        int height = 0;
-        /**
-         * 记录每一行的宽度，width不断取最大宽度
-         */
-        int lineWidth = 0;
-        /**
-         * 每一行的高度，累加至height
-         */
-        int lineHeight = 0;
+        int availableWidth = widthSize - getPaddingLeft() - getPaddingRight();
+        if (!mPrecomputed || !measurePrecomputed(availableWidth)) {
+            mPrecomputed = false;
+            // 测量child的同时生成行表
+            collectItems(true, widthMeasureSpec, heightMeasureSpec, availableWidth);
+            mEngine.breakLines(availableWidth);
+        }
+        setMeasuredDimension(
+                widthMode == MeasureSpec.EXACTLY ? widthSize : mEngine.getContentWidth() + getPaddingLeft() + getPaddingRight(),
+                heightMode == MeasureSpec.EXACTLY ? heightSize : mEngine.getContentHeight() + getPaddingTop() + getPaddingBottom()
+        );
+    }
+
+    /**
+     * 把所有child的宽高和margin交给engine，没有变化的child直接使用测量缓存，engine也不会把它标记为变化
+     * 设置了最大行数时，测量到超出最大行数的第一个child就停止，后面的child不会显示，也不需要测量
+     *
+     * @param measure 是否需要先测量child，为false时直接使用child已有的测量结果
+     */
+    private void collectItems(boolean measure, int widthMeasureSpec, int heightMeasureSpec, int availableWidth) {
         int childCount = getChildCount();
-        // 遍历每个子元素
+        mEngine.setItemCount(childCount);
+        boolean limited = measure && mMaxLines > 0;
+        boolean rtl = isLayoutDirectionRtl();
+        // 和FlowLayoutEngine.breakLines相同的换行规则，只用来判断什么时候可以停止测量
+        int lines = 1;
+        int lineItems = 0;
+        int lineWidth = 0;
         for (int i = 0; i < childCount; i++) {
             View child = getChildAt(i);
             if (child.getVisibility() == View.GONE) {
-                if (i == childCount - 1)
-                {
-                    width = Math.max(lineWidth, width);
-                    height += lineHeight;
-                }
+                mEngine.setItemGone(i);
                 continue;
             }
             // 测量每一个child的宽和高
-            measureChild(child, widthMeasureSpec, heightMeasureSpec);
-            // 得到child的lp
+            if (measure) {
+                measureChildCached(child, widthMeasureSpec, heightMeasureSpec);
+            }
             MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
-            // 当前子空间实际占据的宽度
-            int childWidth = child.getMeasuredWidth() + lp.leftMargin + lp.rightMargin;
-            // 当前子空间实际占据的高度
-            int childHeight = child.getMeasuredHeight() + lp.topMargin + lp.bottomMargin;
-            /**
-             * 如果加入当前child，则超出最大宽度，则的到目前最大宽度给width，类加height 然后开启新行
-             */
-            if (lineWidth + childWidth > widthSize - getPaddingLeft() - getPaddingRight()) {
-                width = Math.max(width, lineWidth);// 取最大的
-                lineWidth = childWidth; // 重新开启新行，开始记录
-                // 叠加当前高度，
-                height += lineHeight;
-                // 开启记录下一行的高度
-                lineHeight = childHeight;
+            if (rtl) {
+                // engine按start/end理解左右margin
+                mEngine.setItem(i, child.getMeasuredWidth(), child.getMeasuredHeight(),
+                        lp.rightMargin, lp.topMargin, lp.leftMargin, lp.bottomMargin);
             } else {
-                // 否则累加值lineWidth,lineHeight取最大高度
-                lineWidth += childWidth;
-                lineHeight = Math.max(lineHeight, childHeight);
+                mEngine.setItem(i, child.getMeasuredWidth(), child.getMeasuredHeight(),
+                        lp.leftMargin, lp.topMargin, lp.rightMargin, lp.bottomMargin);
             }
-            // 如果是最后一个，则将当前记录的最大宽度和当前lineWidth做比较
-            if (i == childCount - 1) {
-                width = Math.max(width, lineWidth);
-                height += lineHeight;
+            if (!limited) continue;
+            int itemWidth = child.getMeasuredWidth() + lp.leftMargin + lp.rightMargin;
+            if (lineItems > 0 && lineWidth + mHorizontalSpacing + itemWidth > availableWidth) {
+                if (++lines > mMaxLines) {
+                    // 后面的child不会显示
+                    return;
+                }
+                lineWidth = itemWidth;
+                lineItems = 1;
+            } else {
+                lineWidth += lineItems > 0 ? mHorizontalSpacing + itemWidth : itemWidth;
+                lineItems++;
             }
+        }
+    }
 
+    /**
+     * 和measureChild相同，但是child的MeasureSpec、内容版本都和上一次相同，并且没有请求重新布局时，
+     * 不再调用child.measure，直接使用上一次的测量结果
+     */
+    protected void measureChildCached(View child, int parentWidthMeasureSpec, int parentHeightMeasureSpec) {
+        ViewGroup.LayoutParams lp = child.getLayoutParams();
+        int childWidthMeasureSpec = getChildMeasureSpec(parentWidthMeasureSpec,
+                getPaddingLeft() + getPaddingRight(), lp.width);
+        int childHeightMeasureSpec = getChildMeasureSpec(parentHeightMeasureSpec,
+                getPaddingTop() + getPaddingBottom(), lp.height);
+        measureChildWithSpecs(child, childWidthMeasureSpec, childHeightMeasureSpec);
+    }
+
+    private void measureChildWithSpecs(View child, int childWidthMeasureSpec, int childHeightMeasureSpec) {
+        ViewGroup.LayoutParams params = child.getLayoutParams();
+        if (!(params instanceof LayoutParams)) {
+            mMeasureCacheMissCount++;
+            child.measure(childWidthMeasureSpec, childHeightMeasureSpec);
+            return;
         }
-        setMeasuredDimension(
-                widthMode == MeasureSpec.EXACTLY ? widthSize : width + getPaddingLeft() + getPaddingRight(),
-                heightMode == MeasureSpec.EXACTLY ? heightSize : height + getPaddingTop() + getPaddingBottom()
-        );
+        LayoutParams lp = (LayoutParams) params;
+        if (!child.isLayoutRequested() && lp.mMeasuredVersion == lp.mContentVersion
+                && lp.mMeasuredWidthSpec == childWidthMeasureSpec && lp.mMeasuredHeightSpec == childHeightMeasureSpec) {
+            mMeasureCacheHitCount++;
+            return;
+        }
+        mMeasureCacheMissCount++;
+        child.measure(childWidthMeasureSpec, childHeightMeasureSpec);
+        lp.mMeasuredVersion = lp.mContentVersion;
+        lp.mMeasuredWidthSpec = childWidthMeasureSpec;
+        lp.mMeasuredHeightSpec = childHeightMeasureSpec;
+    }
+
+    /**
+     * @return 测量缓存命中的次数，即跳过child.measure的次数
+     */
+    public int getMeasureCacheHitCount() {
+        return mMeasureCacheHitCount;
+    }
+
+    /**
+     * @return 测量缓存没有命中、实际调用child.measure的次数
+     */
+    public int getMeasureCacheMissCount() {
+        return mMeasureCacheMissCount;
+    }
+
+    public void resetMeasureCacheStats() {
+        mMeasureCacheHitCount = 0;
+        mMeasureCacheMissCount = 0;
+    }
+
+    /**
+     * 按预先计算好的大小测量child
+     *
+     * @return 预先计算的结果和当前宽度、child不匹配时返回false
+     */
+    private boolean measurePrecomputed(int availableWidth) {
+        int childCount = getChildCount();
+        if (availableWidth != mEngine.getAvailableWidth() || childCount != mEngine.getItemCount()) {
+            return false;
+        }
+        for (int i = 0; i < childCount; i++) {
+            View child = getChildAt(i);
+            if (mEngine.isItemGone(i) != (child.getVisibility() == View.GONE)) {
+                return false;
+            }
+            // 第一次布局之前所有child都请求过布局；之后的请求说明内容变了，大小需要重新测量
+            if (mPrecomputedLaidOut && i < mEngine.getOverflowStart() && isContentChanged(child)) {
+                return false;
+            }
+        }
+        // 超出最大行数的child不显示，不需要测量
+        int measureCount = Math.min(childCount, mEngine.getOverflowStart());
+        for (int i = 0; i < measureCount; i++) {
+            if (mEngine.isItemGone(i)) continue;
+            measureChildWithSpecs(getChildAt(i), MeasureSpec.makeMeasureSpec(mEngine.getItemWidth(i), MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(mEngine.getItemHeight(i), MeasureSpec.EXACTLY));
+        }
+        return true;
+    }
+
+    private static boolean isContentChanged(View child) {
+        if (child.isLayoutRequested()) return true;
+        ViewGroup.LayoutParams params = child.getLayoutParams();
+        if (!(params instanceof LayoutParams)) return false;
+        LayoutParams lp = (LayoutParams) params;
+        return lp.mMeasuredVersion != lp.mContentVersion;
+    }
+
+    /**
+     * 使用在其他线程预先计算好的换行结果，child必须和engine中的item一一对应
+     * 之后的测量直接按engine中的大小进行，不再重新换行，直到宽度、child或child的内容发生变化
+     */
+    protected void setPrecomputedLayout(FlowLayoutEngine engine) {
+        configureEngine(engine);
+        mEngine = engine;
+        mPrecomputed = true;
+        mPrecomputedLaidOut = false;
+        requestLayout();
+    }
+
+    /**
+     * 不再使用预先计算的结果，下一次测量时重新测量child并换行
+     */
+    protected void clearPrecomputedLayout() {
+        if (!mPrecomputed) return;
+        mPrecomputed = false;
+        requestLayout();
     }
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        mAllViews.clear();
-        mLineHeight.clear();
-        mLineWidth.clear();
-        lineViews.clear();
-        int width = getWidth();
-        int lineWidth = 0;
-        int lineHeight = 0;
-
+        int availableWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        // 宽度或child发生变化时才需要根据已有的测量结果重新计算换行
+        if (availableWidth != mEngine.getAvailableWidth() || getChildCount() != mEngine.getItemCount()) {
+            collectItems(false, 0, 0, availableWidth);
+            mEngine.breakLines(availableWidth);
+        }
+        mPrecomputedLaidOut = mPrecomputed;
+        // 对齐按padding之内的内容区域计算
+        mEngine.layout(mGravity, mAlignItems, isLayoutDirectionRtl(), getPaddingLeft(), getPaddingTop(), availableWidth);
         int cCount = getChildCount();
-        // 遍历所有的childView，用于设置allViews的值，以及mLineHeight的值。
+        int overflowStart = mEngine.getOverflowStart();
         for (int i = 0; i < cCount; i++) {
+            if (mEngine.isItemGone(i)) continue;
             View child = getChildAt(i);
-            if (child.getVisibility() == View.GONE) continue;
-            MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
-            int childWidth = child.getMeasuredWidth();
-            int childHeight = child.getMeasuredHeight();
-            // 如果已经需要换行
-            if (childWidth + lineWidth + lp.leftMargin + lp.rightMargin > width - getPaddingLeft() - getPaddingRight()) {
-                // 记录这一行所有的View以及最大高度
-                mLineHeight.add(lineHeight);
-                // 将当前行的childView保存，然后开启新的ArrayList保存下一行的childView
-                mAllViews.add(lineViews);
-                mLineWidth.add(lineWidth);
-                lineWidth = 0;// 重置行宽
-                lineHeight = childHeight + lp.topMargin + lp.bottomMargin;
-                lineViews = new ArrayList<View>();
-            }
-            /**
-             * 如果不需要换行，则累加
-             */
-            lineWidth += childWidth + lp.leftMargin + lp.rightMargin;
-            lineHeight = Math.max(lineHeight, childHeight + lp.topMargin + lp.bottomMargin);
-            lineViews.add(child);
-        }
-        // 记录最后一行
-        mLineHeight.add(lineHeight);
-        mLineWidth.add(lineWidth);
-        mAllViews.add(lineViews);
-        int left = getPaddingLeft();
-        int top = getPaddingTop();
-        // 得到总行数
-        int lineNum = mAllViews.size();
-        //根据allViews的长度，遍历所有的行数
-        for (int i = 0; i < lineNum; i++) {
-            // 每一行的所有的views
-            lineViews = mAllViews.get(i);
-            // 当前行的最大高度
-            lineHeight = mLineHeight.get(i);
-            int currentLineWidth = this.mLineWidth.get(i);
-            switch (this.mGravity){
-                case LEFT:
-                    left = getPaddingLeft();
-                    break;
-                case CENTER:
-                    left = (width - currentLineWidth)/2+getPaddingLeft();
-                    break;
-                case RIGHT:
-                    left = width - currentLineWidth + getPaddingLeft();
-                    break;
-            }
-            // 遍历当前行所有的childView，对childView的left , top , right , bottom 进行计算，和定位。
-            for (int j = 0; j < lineViews.size(); j++) {
-                View child = lineViews.get(j);
-                if (child.getVisibility() == View.GONE) {
-                    continue;
-                }
-                MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
-                //计算childView的left,top,right,bottom
-                int lc = left + lp.leftMargin;
-                int tc = top + lp.topMargin;
-                int rc = lc + child.getMeasuredWidth();
-                int bc = tc + child.getMeasuredHeight();
-
-                child.layout(lc, tc, rc, bc);
-                left += child.getMeasuredWidth() + lp.rightMargin + lp.leftMargin;
+            if (i >= overflowStart) {
+                // 超出最大行数的child不显示
+                child.layout(0, 0, 0, 0);
+                continue;
             }
-            // 重置top，准备计算下一行的childView的位置
-            top += lineHeight;
+            int lc = mEngine.getItemLeft(i);
+            int tc = mEngine.getItemTop(i);
+            child.layout(lc, tc, lc + child.getMeasuredWidth(), tc + child.getMeasuredHeight());
+        }
+        dispatchOverflow(Math.min(overflowStart, cCount), cCount);
+    }
+
+    /**
+     * @return 是否从右到左排列，API 17以下始终为false
+     */
+    protected boolean isLayoutDirectionRtl() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                && getLayoutDirection() == View.LAYOUT_DIRECTION_RTL;
+    }
+
+    /**
+     * 显示的数量发生变化时通知监听器
+     */
+    protected void dispatchOverflow(int visibleCount, int totalCount) {
+        if (visibleCount == mLastVisibleCount && totalCount == mLastTotalCount) return;
+        mLastVisibleCount = visibleCount;
+        mLastTotalCount = totalCount;
+        if (mOnOverflowListener != null) {
+            mOnOverflowListener.onOverflow(this, visibleCount, totalCount);
         }
     }
+
+    public interface OnOverflowListener {
+        /**
+         * 设置了最大行数时，布局完成后显示的数量发生变化时回调
+         *
+         * @param visibleCount 显示的数量，之后的都没有显示
+         * @param totalCount   总数
+         */
+        void onOverflow(FlowLayout parent, int visibleCount, int totalCount);
+    }
+
+    public void setOnOverflowListener(OnOverflowListener listener) {
+        mOnOverflowListener = listener;
+        mLastVisibleCount = -1;
+        mLastTotalCount = -1;
+    }
+
+    /**
+     * 把间距、最大行数等设置同步到engine
+     */
+    protected void configureEngine(FlowLayoutEngine engine) {
+        engine.setSpacing(mHorizontalSpacing, mVerticalSpacing);
+        engine.setMaxLines(mMaxLines);
+    }
+
+    /**
+     * @param gravity FlowLayoutEngine.LEFT/CENTER/RIGHT/SPACE_BETWEEN/SPACE_AROUND/SPACE_EVENLY
+     */
+    public void setGravity(int gravity) {
+        if (mGravity == gravity) return;
+        mGravity = gravity;
+        requestLayout();
+    }
+
+    /**
+     * @param alignItems 行内纵向的对齐方式 FlowLayoutEngine.ALIGN_TOP/ALIGN_CENTER/ALIGN_BOTTOM
+     */
+    public void setAlignItems(int alignItems) {
+        if (mAlignItems == alignItems) return;
+        mAlignItems = alignItems;
+        requestLayout();
+    }
+
+    public int getAlignItems() {
+        return mAlignItems;
+    }
+
+    /**
+     * 设置同一行相邻child之间、相邻行之间的间距
+     */
+    public void setSpacing(int horizontalSpacing, int verticalSpacing) {
+        if (mHorizontalSpacing == horizontalSpacing && mVerticalSpacing == verticalSpacing) return;
+        mHorizontalSpacing = horizontalSpacing;
+        mVerticalSpacing = verticalSpacing;
+        configureEngine(mEngine);
+        requestLayout();
+    }
+
+    public int getHorizontalSpacing() {
+        return mHorizontalSpacing;
+    }
+
+    public int getVerticalSpacing() {
+        return mVerticalSpacing;
+    }
+
+    /**
+     * 设置最大行数，超出的child不测量也不显示，小于等于0表示不限制
+     */
+    public void setMaxLines(int maxLines) {
+        if (mMaxLines == maxLines) return;
+        mMaxLines = maxLines;
+        configureEngine(mEngine);
+        requestLayout();
+    }
+
+    public int getMaxLines() {
+        return mMaxLines;
+    }
+
+    /**
+     * @return 对齐方式 FlowLayoutEngine.LEFT/CENTER/RIGHT
+     */
+    protected int getGravity() {
+        return mGravity;
+    }
+
+    /**
+     * @return 保存行表和child位置的engine，子类可以直接查询
+     */
+    protected FlowLayoutEngine getEngine() {
+        return mEngine;
+    }
 }
@@ -0,0 +1,642 @@
+package top.cokernut.customview.view;
+
+import java.util.Arrays;
+
+/**
+ * 流式布局的换行引擎
+ * 只依赖int数组，不依赖View、LayoutParams和MeasureSpec，可以直接在JVM上测试，也可以在非UI线程中使用。
+ * 使用顺序：setItemCount -> setItem/setItemGone -> breakLines -> layout
+ */
+public class FlowLayoutEngine {
+    public static final int LEFT = -1;
+    public static final int CENTER = 0;
+    public static final int RIGHT = 1;
+    /**
+     * 两端对齐，剩余空间平均分配到item之间
+     */
+    public static final int SPACE_BETWEEN = 2;
+    /**
+     * 剩余空间平均分配到每个item两侧，两端的空白是item之间的一半
+     */
+    public static final int SPACE_AROUND = 3;
+    /**
+     * 剩余空间平均分配到item之间和两端
+     */
+    public static final int SPACE_EVENLY = 4;
+
+    /**
+     * 行内item的纵向对齐方式
+     */
+    public static final int ALIGN_TOP = 0;
+    public static final int ALIGN_CENTER = 1;
+    public static final int ALIGN_BOTTOM = 2;
+
+    private int mItemCount;
+    /**
+     * 每个item的宽高（不含margin）和四个margin
+     */
+    private int[] mWidth = new int[0];
+    private int[] mHeight = new int[0];
+    private int[] mMarginLeft = new int[0];
+    private int[] mMarginTop = new int[0];
+    private int[] mMarginRight = new int[0];
+    private int[] mMarginBottom = new int[0];
+    private boolean[] mGone = new boolean[0];
+    /**
+     * layout之后每个item的left、top（不含margin，即child.layout的参数）
+     */
+    private int[] mLeft = new int[0];
+    private int[] mTop = new int[0];
+    /**
+     * layout时传入的top，用来把坐标换算成相对于内容区域的纵坐标
+     */
+    private int mLayoutTop;
+    private boolean mLayoutRtl;
+
+    /**
+     * 行表：每一行的起始item下标、结束item下标（不含）、行宽、行高和行的top
+     */
+    private int[] mLineStart = new int[8];
+    private int[] mLineEnd = new int[8];
+    private int[] mLineWidth = new int[8];
+    private int[] mLineHeight = new int[8];
+    private int[] mLineTop = new int[8];
+    private int mLineCount;
+    private int mAvailableWidth = -1;
+    /**
+     * 上一次换行之后第一个和最后一个发生变化的item，换行时从第一个所在的行开始重新计算，
+     * 越过最后一个之后，只要新的行首和上一次的某个行首重合，后面的行就可以直接复用
+     */
+    private int mFirstDirty = 0;
+    private int mLastDirty = Integer.MAX_VALUE;
+    /**
+     * 局部换行时保存上一次的行表
+     */
+    private int[] mOldLineStart = new int[0];
+    private int[] mOldLineEnd = new int[0];
+    private int[] mOldLineWidth = new int[0];
+    private int[] mOldLineHeight = new int[0];
+    private int[] mOldLineTop = new int[0];
+    private int mOldLineCount;
+    private int mContentWidth;
+    private int mContentHeight;
+    /**
+     * 同一行相邻item之间、相邻行之间的间距
+     */
+    private int mHorizontalSpacing;
+    private int mVerticalSpacing;
+    private int mMaxLines = Integer.MAX_VALUE;
+    /**
+     * 超出最大行数的第一个item，没有超出时等于item数量
+     */
+    private int mOverflowStart;
+
+    /**
+     * 设置item数量，容量不够时扩容，已有的item数据保留
+     */
+    public void setItemCount(int count) {
+        if (count > mWidth.length) {
+            int size = Math.max(count, mWidth.length * 2);
+            mWidth = Arrays.copyOf(mWidth, size);
+            mHeight = Arrays.copyOf(mHeight, size);
+            mMarginLeft = Arrays.copyOf(mMarginLeft, size);
+            mMarginTop = Arrays.copyOf(mMarginTop, size);
+            mMarginRight = Arrays.copyOf(mMarginRight, size);
+            mMarginBottom = Arrays.copyOf(mMarginBottom, size);
+            mGone = Arrays.copyOf(mGone, size);
+            mLeft = Arrays.copyOf(mLeft, size);
+            mTop = Arrays.copyOf(mTop, size);
+        }
+        if (count != mItemCount) {
+            markDirty(Math.min(count, mItemCount));
+            markDirty(Math.max(count, mItemCount) - 1);
+        }
+        mItemCount = count;
+    }
+
+    private void markDirty(int index) {
+        if (mFirstDirty == Integer.MAX_VALUE) {
+            mFirstDirty = index;
+            mLastDirty = index;
+            return;
+        }
+        if (index < mFirstDirty) {
+            mFirstDirty = index;
+        }
+        if (index > mLastDirty) {
+            mLastDirty = index;
+        }
+    }
+
+    /**
+     * @return 上一次换行之后第一个发生变化的item，没有变化时为Integer.MAX_VALUE
+     */
+    public int getFirstDirtyItem() {
+        return mFirstDirty;
+    }
+
+    public int getItemCount() {
+        return mItemCount;
+    }
+
+    /**
+     * 设置一个item的宽高和margin
+     */
+    public void setItem(int index, int width, int height,
+                        int leftMargin, int topMargin, int rightMargin, int bottomMargin) {
+        if (mGone[index] || mWidth[index] != width || mHeight[index] != height
+                || mMarginLeft[index] != leftMargin || mMarginTop[index] != topMargin
+                || mMarginRight[index] != rightMargin || mMarginBottom[index] != bottomMargin) {
+            markDirty(index);
+        }
+        mWidth[index] = width;
+        mHeight[index] = height;
+        mMarginLeft[index] = leftMargin;
+        mMarginTop[index] = topMargin;
+        mMarginRight[index] = rightMargin;
+        mMarginBottom[index] = bottomMargin;
+        mGone[index] = false;
+    }
+
+    /**
+     * 标记一个item为GONE，不占用空间
+     */
+    public void setItemGone(int index) {
+        if (!mGone[index]) {
+            markDirty(index);
+        }
+        mWidth[index] = 0;
+        mHeight[index] = 0;
+        mMarginLeft[index] = 0;
+        mMarginTop[index] = 0;
+        mMarginRight[index] = 0;
+        mMarginBottom[index] = 0;
+        mGone[index] = true;
+    }
+
+    /**
+     * 批量设置item
+     *
+     * @param count   item数量
+     * @param widths  宽度
+     * @param heights 高度
+     * @param margins 每个item依次为left、top、right、bottom四个margin，可以为null
+     */
+    public void setItems(int count, int[] widths, int[] heights, int[] margins) {
+        setItemCount(count);
+        for (int i = 0; i < count; i++) {
+            if (margins == null) {
+                setItem(i, widths[i], heights[i], 0, 0, 0, 0);
+            } else {
+                setItem(i, widths[i], heights[i],
+                        margins[i * 4], margins[i * 4 + 1], margins[i * 4 + 2], margins[i * 4 + 3]);
+            }
+        }
+    }
+
+    /**
+     * 设置item之间和行之间的间距，和margin不同，间距不会出现在行首、行尾和第一行之上
+     */
+    public void setSpacing(int horizontalSpacing, int verticalSpacing) {
+        if (horizontalSpacing == mHorizontalSpacing && verticalSpacing == mVerticalSpacing) return;
+        mHorizontalSpacing = horizontalSpacing;
+        mVerticalSpacing = verticalSpacing;
+        // 下一次需要完整换行
+        mAvailableWidth = -1;
+    }
+
+    public int getHorizontalSpacing() {
+        return mHorizontalSpacing;
+    }
+
+    public int getVerticalSpacing() {
+        return mVerticalSpacing;
+    }
+
+    /**
+     * 设置最大行数，换行到达最大行数后停止，后面的item不再参与换行和定位
+     */
+    public void setMaxLines(int maxLines) {
+        if (maxLines <= 0) maxLines = Integer.MAX_VALUE;
+        if (maxLines == mMaxLines) return;
+        mMaxLines = maxLines;
+        mAvailableWidth = -1;
+    }
+
+    public int getMaxLines() {
+        return mMaxLines;
+    }
+
+    /**
+     * @return 超出最大行数的第一个item下标，所有item都能放下时等于item数量
+     */
+    public int getOverflowStart() {
+        return mOverflowStart;
+    }
+
+    /**
+     * 按可用宽度计算换行，生成行表
+     * 可用宽度不变时，第一个发生变化的item之前的行直接复用，只从它所在的行开始重新计算；
+     * 越过最后一个发生变化的item后，新的行首一旦和上一次的行首重合，剩下的行也直接复用
+     *
+     * @param availableWidth 每一行可用的宽度
+     * @return 行数
+     */
+    public int breakLines(int availableWidth) {
+        int restartLine = 0;
+        boolean partial = availableWidth == mAvailableWidth && mLineCount > 0;
+        if (partial) {
+            int lastEnd = mLineEnd[mLineCount - 1];
+            if (mFirstDirty >= mItemCount && (lastEnd == mItemCount || (mOverflowStart < mItemCount && lastEnd < mItemCount))) {
+                // 没有任何变化，或者只有超出最大行数的item发生了变化
+                mOverflowStart = Math.min(mOverflowStart, mItemCount);
+                clearDirty();
+                return mLineCount;
+            }
+            restartLine = findRestartLine(mFirstDirty);
+            saveOldLines(restartLine);
+        }
+        mLineCount = restartLine;
+        mContentWidth = 0;
+        for (int i = 0; i < restartLine; i++) {
+            mContentWidth = Math.max(mContentWidth, mLineWidth[i]);
+        }
+        mContentHeight = restartLine == 0 ? 0 : mLineTop[restartLine - 1] + mLineHeight[restartLine - 1];
+        int lineStart = restartLine == 0 ? 0 : mLineEnd[restartLine - 1];
+        int lineItems = 0;
+        int lineWidth = 0;
+        int lineHeight = 0;
+        int oldLine = restartLine;
+        // 有最大行数时行数可能和上一次不同，不能复用后面的行
+        boolean reusable = partial && mMaxLines == Integer.MAX_VALUE;
+        for (int i = lineStart; i < mItemCount; i++) {
+            if (mGone[i]) continue;
+            // 当前item实际占据的宽高
+            int itemWidth = mWidth[i] + mMarginLeft[i] + mMarginRight[i];
+            int itemHeight = mHeight[i] + mMarginTop[i] + mMarginBottom[i];
+            // 如果加入当前item会超出最大宽度，则结束当前行，开启新行
+            if (lineItems > 0 && lineWidth + mHorizontalSpacing + itemWidth > availableWidth) {
+                addLine(lineStart, i, lineWidth, lineHeight);
+                if (mLineCount >= mMaxLines) {
+                    // 到达最大行数，后面的item不再换行
+                    mOverflowStart = i;
+                    mAvailableWidth = availableWidth;
+                    clearDirty();
+                    return mLineCount;
+                }
+                if (reusable && i > mLastDirty) {
+                    while (oldLine < mOldLineCount && mOldLineStart[oldLine] < i) {
+                        oldLine++;
+                    }
+                    if (oldLine < mOldLineCount && mOldLineStart[oldLine] == i) {
+                        // 后面的item都没有变化，换行结果和上一次相同
+                        reuseOldLines(oldLine);
+                        mOverflowStart = mItemCount;
+                        mAvailableWidth = availableWidth;
+                        clearDirty();
+                        return mLineCount;
+                    }
+                }
+                lineStart = i;
+                lineWidth = itemWidth;
+                lineHeight = itemHeight;
+                lineItems = 1;
+            } else {
+                lineWidth += lineItems > 0 ? mHorizontalSpacing + itemWidth : itemWidth;
+                lineHeight = Math.max(lineHeight, itemHeight);
+                lineItems++;
+            }
+        }
+        // 记录最后一行
+        addLine(lineStart, mItemCount, lineWidth, lineHeight);
+        mOverflowStart = mItemCount;
+        mAvailableWidth = availableWidth;
+        clearDirty();
+        return mLineCount;
+    }
+
+    private void clearDirty() {
+        mFirstDirty = Integer.MAX_VALUE;
+        mLastDirty = Integer.MAX_VALUE;
+    }
+
+    /**
+     * 保存从restartLine开始的旧行表，重新换行时会被覆盖
+     */
+    private void saveOldLines(int restartLine) {
+        if (mOldLineStart.length < mLineCount) {
+            mOldLineStart = new int[mLineStart.length];
+            mOldLineEnd = new int[mLineStart.length];
+            mOldLineWidth = new int[mLineStart.length];
+            mOldLineHeight = new int[mLineStart.length];
+            mOldLineTop = new int[mLineStart.length];
+        }
+        int count = mLineCount - restartLine;
+        System.arraycopy(mLineStart, restartLine, mOldLineStart, restartLine, count);
+        System.arraycopy(mLineEnd, restartLine, mOldLineEnd, restartLine, count);
+        System.arraycopy(mLineWidth, restartLine, mOldLineWidth, restartLine, count);
+        System.arraycopy(mLineHeight, restartLine, mOldLineHeight, restartLine, count);
+        System.arraycopy(mLineTop, restartLine, mOldLineTop, restartLine, count);
+        mOldLineCount = mLineCount;
+    }
+
+    /**
+     * 从旧行表的oldLine开始，把剩下的行原样接到当前行表后面，只重新累加行的top
+     */
+    private void reuseOldLines(int oldLine) {
+        for (int j = oldLine; j < mOldLineCount; j++) {
+            addLine(mOldLineStart[j], mOldLineEnd[j], mOldLineWidth[j], mOldLineHeight[j]);
+        }
+    }
+
+    /**
+     * 找到需要重新计算的第一行：dirty item所在的行；
+     * 如果dirty item是行首，它的变化可能让它能放进上一行，所以从上一行开始
+     */
+    private int findRestartLine(int dirty) {
+        int low = 0;
+        int high = mLineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mLineStart[mid] <= dirty) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // dirty之前只有GONE的item时也视为行首
+        int first = mLineStart[low];
+        while (first < dirty && first < mItemCount && mGone[first]) {
+            first++;
+        }
+        if (low > 0 && first >= dirty) {
+            low--;
+        }
+        return low;
+    }
+
+    private void addLine(int start, int end, int width, int height) {
+        if (mLineCount == mLineStart.length) {
+            int size = mLineCount * 2;
+            mLineStart = Arrays.copyOf(mLineStart, size);
+            mLineEnd = Arrays.copyOf(mLineEnd, size);
+            mLineWidth = Arrays.copyOf(mLineWidth, size);
+            mLineHeight = Arrays.copyOf(mLineHeight, size);
+            mLineTop = Arrays.copyOf(mLineTop, size);
+        }
+        mLineStart[mLineCount] = start;
+        mLineEnd[mLineCount] = end;
+        mLineWidth[mLineCount] = width;
+        mLineHeight[mLineCount] = height;
+        if (mLineCount > 0) {
+            mContentHeight += mVerticalSpacing;
+        }
+        mLineTop[mLineCount] = mContentHeight;
+        mLineCount++;
+        mContentWidth = Math.max(mContentWidth, width);
+        mContentHeight += height;
+    }
+
+    /**
+     * 根据行表计算每个item的位置，必须在breakLines之后调用，item纵向顶部对齐
+     *
+     * @see #layout(int, int, boolean, int, int, int)
+     */
+    public void layout(int gravity, int left, int top, int width) {
+        layout(gravity, ALIGN_TOP, false, left, top, width);
+    }
+
+    /**
+     * 从左到右排列
+     *
+     * @see #layout(int, int, boolean, int, int, int)
+     */
+    public void layout(int gravity, int alignItems, int left, int top, int width) {
+        layout(gravity, alignItems, false, left, top, width);
+    }
+
+    /**
+     * 根据行表计算每个item的位置，必须在breakLines之后调用
+     * 从右到左排列时先按从左到右计算，再以内容区域为轴镜像，LEFT/RIGHT相当于start/end，
+     * item的左右margin也按start/end理解，即左margin在item的右侧
+     *
+     * @param gravity    行内横向的排列方式 LEFT/CENTER/RIGHT/SPACE_BETWEEN/SPACE_AROUND/SPACE_EVENLY
+     * @param alignItems 行内纵向的对齐方式 ALIGN_TOP/ALIGN_CENTER/ALIGN_BOTTOM
+     * @param rtl        是否从右到左排列
+     * @param left       内容区域的left
+     * @param top        内容区域的top
+     * @param width      内容区域的宽度（不含padding）
+     */
+    public void layout(int gravity, int alignItems, boolean rtl, int left, int top, int width) {
+        mLayoutTop = top;
+        mLayoutRtl = rtl;
+        for (int i = 0; i < mLineCount; i++) {
+            int free = Math.max(0, width - mLineWidth[i]);
+            int visible = 0;
+            if (gravity >= SPACE_BETWEEN) {
+                for (int j = mLineStart[i]; j < mLineEnd[i]; j++) {
+                    if (!mGone[j]) visible++;
+                }
+            }
+            int x = left;
+            switch (gravity) {
+                case CENTER:
+                    x = left + (width - mLineWidth[i]) / 2;
+                    break;
+                case RIGHT:
+                    x = left + width - mLineWidth[i];
+                    break;
+            }
+            int y = top + mLineTop[i];
+            int lineHeight = mLineHeight[i];
+            int index = 0;
+            for (int j = mLineStart[i]; j < mLineEnd[i]; j++) {
+                int itemTop = y;
+                if (!mGone[j] && alignItems != ALIGN_TOP) {
+                    int space = lineHeight - mHeight[j] - mMarginTop[j] - mMarginBottom[j];
+                    itemTop += alignItems == ALIGN_CENTER ? space / 2 : space;
+                }
+                // 剩余空间按比例分配，每个位置都从行首直接计算，不会累积误差
+                int offset = gravity >= SPACE_BETWEEN ? distributeSpace(gravity, free, index, visible) : 0;
+                int itemLeft = x + offset + mMarginLeft[j];
+                mLeft[j] = rtl ? 2 * left + width - itemLeft - mWidth[j] : itemLeft;
+                mTop[j] = itemTop + mMarginTop[j];
+                if (mGone[j]) continue;
+                x += mWidth[j] + mMarginLeft[j] + mMarginRight[j] + mHorizontalSpacing;
+                index++;
+            }
+        }
+    }
+
+    /**
+     * @return 行内第index个可见item左侧分到的剩余空间之和
+     */
+    private static int distributeSpace(int gravity, int free, int index, int visible) {
+        if (visible == 0) return 0;
+        long space = free;
+        switch (gravity) {
+            case SPACE_BETWEEN:
+                return visible > 1 ? (int) (space * index / (visible - 1)) : 0;
+            case SPACE_AROUND:
+                return (int) (space * (2 * index + 1) / (2 * visible));
+            case SPACE_EVENLY:
+                return (int) (space * (index + 1) / (visible + 1));
+        }
+        return 0;
+    }
+
+    /**
+     * @return 上一次breakLines使用的可用宽度，还没有计算过时为-1
+     */
+    public int getAvailableWidth() {
+        return mAvailableWidth;
+    }
+
+    public int getContentWidth() {
+        return mContentWidth;
+    }
+
+    public int getContentHeight() {
+        return mContentHeight;
+    }
+
+    public int getLineCount() {
+        return mLineCount;
+    }
+
+    public int getLineStart(int line) {
+        return mLineStart[line];
+    }
+
+    public int getLineEnd(int line) {
+        return mLineEnd[line];
+    }
+
+    public int getLineWidth(int line) {
+        return mLineWidth[line];
+    }
+
+    public int getLineHeight(int line) {
+        return mLineHeight[line];
+    }
+
+    /**
+     * @return 行相对于内容区域的top
+     */
+    public int getLineTop(int line) {
+        return mLineTop[line];
+    }
+
+    /**
+     * 二分查找纵坐标所在的行
+     *
+     * @param y 相对于内容区域的纵坐标
+     * @return 行下标，y在第一行之上时返回0，在最后一行之下时返回最后一行
+     */
+    public int getLineForOffset(int y) {
+        int low = 0;
+        int high = mLineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mLineTop[mid] <= y) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 查找坐标所在的item：先二分查找行，再在行内按item的left二分查找，不分配任何对象
+     * 只能在layout之后调用，坐标和layout传入的left、top在同一个坐标系中
+     *
+     * @return item下标，没有落在任何item上（包括margin和行内空白）时返回-1
+     */
+    public int findItemAt(int x, int y) {
+        if (mLineCount == 0) return -1;
+        int line = getLineForOffset(y - mLayoutTop);
+        int low = mLineStart[line];
+        int high = mLineEnd[line] - 1;
+        if (low > high) return -1;
+        if (mLayoutRtl) {
+            return findItemInRtlLine(low, high, x, y);
+        }
+        if (x < mLeft[low]) return -1;
+        // 行内item的left单调不减，找到最后一个left <= x的item
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mLeft[mid] <= x) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // 隐藏的item不占位置，left和后面的item重合，往前找可见的item
+        int start = mLineStart[line];
+        while (low >= start && mGone[low]) {
+            low--;
+        }
+        if (low < start) return -1;
+        if (x >= mLeft[low] + mWidth[low] || y < mTop[low] || y >= mTop[low] + mHeight[low]) {
+            return -1;
+        }
+        return low;
+    }
+
+    /**
+     * 从右到左排列的行内item的left单调不增，找到第一个left <= x的item
+     */
+    private int findItemInRtlLine(int low, int high, int x, int y) {
+        if (mLeft[high] > x) return -1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mLeft[mid] <= x) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        // 隐藏的item右侧紧挨着前一个item的margin，后面的item都在它的左侧，坐标不可能落在可见的item上
+        if (mGone[low] || x >= mLeft[low] + mWidth[low] || y < mTop[low] || y >= mTop[low] + mHeight[low]) {
+            return -1;
+        }
+        return low;
+    }
+
+    public boolean isItemGone(int index) {
+        return mGone[index];
+    }
+
+    public int getItemWidth(int index) {
+        return mWidth[index];
+    }
+
+    public int getItemHeight(int index) {
+        return mHeight[index];
+    }
+
+    public int getItemMarginLeft(int index) {
+        return mMarginLeft[index];
+    }
+
+    public int getItemMarginTop(int index) {
+        return mMarginTop[index];
+    }
+
+    public int getItemMarginRight(int index) {
+        return mMarginRight[index];
+    }
+
+    public int getItemMarginBottom(int index) {
+        return mMarginBottom[index];
+    }
+
+    public int getItemLeft(int index) {
+        return mLeft[index];
+    }
+
+    public int getItemTop(int index) {
+        return mTop[index];
+    }
+}
@@ -0,0 +1,108 @@
+package top.cokernut.customview.view;
+
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * 所有动画View共用的帧时钟，由Choreographer驱动，每一帧只注册一次回调，
+ * 再分发给所有订阅的View，View按同一个帧时间计算动画进度。没有订阅者时自动停止。
+ * 只能在主线程使用
+ */
+public class FrameClock implements Choreographer.FrameCallback {
+    private static FrameClock sInstance;
+
+    public interface Callback {
+        /**
+         * @param frameTimeNanos 这一帧的时间，和System.nanoTime()使用同一个时间基准
+         */
+        void onFrame(long frameTimeNanos);
+    }
+
+    private final ArrayList<Callback> mCallbacks = new ArrayList<>();
+    /**
+     * 分发时使用的副本，分发期间被移除的回调置为null
+     */
+    private Callback[] mDispatching = new Callback[8];
+    private int mDispatchingCount;
+    private boolean mPosted;
+    private long mFrameTimeNanos;
+
+    private FrameClock() {
+    }
+
+    public static FrameClock getInstance() {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("FrameClock can only be used on the main thread");
+        }
+        if (sInstance == null) {
+            sInstance = new FrameClock();
+        }
+        return sInstance;
+    }
+
+    public void addCallback(Callback callback) {
+        if (mCallbacks.contains(callback)) return;
+        mCallbacks.add(callback);
+        if (!mPosted) {
+            mPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    public void removeCallback(Callback callback) {
+        if (!mCallbacks.remove(callback)) return;
+        for (int i = 0; i < mDispatchingCount; i++) {
+            if (mDispatching[i] == callback) {
+                mDispatching[i] = null;
+            }
+        }
+        if (mCallbacks.isEmpty() && mPosted) {
+            mPosted = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    /**
+     * @return 最近一帧的时间，还没有分发过时返回0
+     */
+    public long getFrameTimeNanos() {
+        return mFrameTimeNanos;
+    }
+
+    /**
+     * @return 当前订阅的回调数量
+     */
+    public int getCallbackCount() {
+        return mCallbacks.size();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mPosted = false;
+        mFrameTimeNanos = frameTimeNanos;
+        int count = mCallbacks.size();
+        if (mDispatching.length < count) {
+            mDispatching = new Callback[Math.max(count, mDispatching.length * 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            mDispatching[i] = mCallbacks.get(i);
+        }
+        mDispatchingCount = count;
+        for (int i = 0; i < count; i++) {
+            Callback callback = mDispatching[i];
+            if (callback != null) {
+                callback.onFrame(frameTimeNanos);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            mDispatching[i] = null;
+        }
+        mDispatchingCount = 0;
+        if (!mCallbacks.isEmpty() && !mPosted) {
+            mPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package top.cokernut.customview.view;
+
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * 把一个View的动画挂到共用的FrameClock上
+ * View离开窗口、自身或父View不可见、完全被裁剪（比如滚动到屏幕外）时取消订阅，不再回调，
+ * 在ViewTreeObserver上等待下一次绘制，重新可见时自动恢复，View不需要转发可见性的变化。
+ * 恢复后按帧时间继续计算进度，和一直在运行的动画保持同样的相位，有限时长的动画在恢复后的第一帧直接到达结束状态
+ */
+public class FrameClockAnimation implements FrameClock.Callback, View.OnAttachStateChangeListener,
+        ViewTreeObserver.OnPreDrawListener {
+
+    public interface Listener {
+        /**
+         * 每一帧回调一次，在这里按elapsedMillis计算动画进度并刷新View
+         *
+         * @param elapsedMillis 从start开始经过的时间，暂停期间也在计时
+         * @return 返回false时动画结束
+         */
+        boolean onAnimationFrame(long elapsedMillis);
+    }
+
+    private final View mView;
+    private final Listener mListener;
+    private final Rect mVisibleRect = new Rect();
+    private boolean mRunning;
+    private boolean mAttached;
+    private boolean mSubscribed;
+    /**
+     * 动画在运行但View不可见时，等待重新可见的ViewTreeObserver
+     */
+    private ViewTreeObserver mWaitingObserver;
+    private long mStartTimeNanos;
+
+    public FrameClockAnimation(View view, Listener listener) {
+        mView = view;
+        mListener = listener;
+        mAttached = view.getWindowToken() != null;
+        view.addOnAttachStateChangeListener(this);
+    }
+
+    public void start() {
+        mRunning = true;
+        mStartTimeNanos = System.nanoTime();
+        updateSubscription();
+    }
+
+    public void stop() {
+        mRunning = false;
+        updateSubscription();
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * 在窗口中、View、父View和窗口都可见并且没有被完全裁剪时订阅FrameClock，
+     * 只是不可见时等待下一次绘制再检查
+     */
+    private void updateSubscription() {
+        boolean active = mRunning && mAttached;
+        boolean subscribe = active && isVisible();
+        setWaitingForVisible(active && !subscribe);
+        if (subscribe == mSubscribed) return;
+        if (subscribe) {
+            mSubscribed = true;
+            FrameClock.getInstance().addCallback(this);
+        } else {
+            unsubscribe();
+        }
+    }
+
+    private boolean isVisible() {
+        return mView.isShown() && mView.getWindowVisibility() == View.VISIBLE
+                && mView.getGlobalVisibleRect(mVisibleRect);
+    }
+
+    /**
+     * View、父View或窗口重新可见，以及滚动回屏幕内时都会触发一次绘制，在onPreDraw中恢复订阅
+     */
+    private void setWaitingForVisible(boolean waiting) {
+        if (waiting == (mWaitingObserver != null)) return;
+        if (waiting) {
+            mWaitingObserver = mView.getViewTreeObserver();
+            mWaitingObserver.addOnPreDrawListener(this);
+        } else {
+            if (mWaitingObserver.isAlive()) {
+                mWaitingObserver.removeOnPreDrawListener(this);
+            }
+            mWaitingObserver = null;
+        }
+    }
+
+    private void unsubscribe() {
+        mSubscribed = false;
+        FrameClock.getInstance().removeCallback(this);
+    }
+
+    @Override
+    public void onFrame(long frameTimeNanos) {
+        if (!isVisible()) {
+            updateSubscription();
+            return;
+        }
+        long elapsedMillis = Math.max(0, (frameTimeNanos - mStartTimeNanos) / 1000000);
+        if (!mListener.onAnimationFrame(elapsedMillis)) {
+            stop();
+        }
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        updateSubscription();
+        return true;
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View v) {
+        mAttached = true;
+        updateSubscription();
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View v) {
+        // 离开窗口时isShown可能仍然为true，按mAttached取消订阅
+        mAttached = false;
+        updateSubscription();
+    }
+}
@@ -0,0 +1,135 @@
+package top.cokernut.customview.view;
+
+import java.util.Arrays;
+
+/**
+ * 不装箱的long集合，开放寻址+线性探测，删除时把后面的元素往前移，不使用墓碑
+ * 用来按标签id保存选中状态
+ */
+class LongHashSet {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] mKeys;
+    private boolean[] mUsed;
+    private int mSize;
+    private int mMask;
+
+    LongHashSet() {
+        allocate(16);
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    boolean contains(long key) {
+        int index = hash(key);
+        while (mUsed[index]) {
+            if (mKeys[index] == key) return true;
+            index = (index + 1) & mMask;
+        }
+        return false;
+    }
+
+    /**
+     * @return 之前不存在时返回true
+     */
+    boolean add(long key) {
+        int index = hash(key);
+        while (mUsed[index]) {
+            if (mKeys[index] == key) return false;
+            index = (index + 1) & mMask;
+        }
+        mUsed[index] = true;
+        mKeys[index] = key;
+        if (++mSize > mKeys.length * LOAD_FACTOR) {
+            rehash(mKeys.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * @return 之前存在时返回true
+     */
+    boolean remove(long key) {
+        int index = hash(key);
+        while (mUsed[index]) {
+            if (mKeys[index] == key) {
+                mSize--;
+                shiftKeys(index);
+                return true;
+            }
+            index = (index + 1) & mMask;
+        }
+        return false;
+    }
+
+    void clear() {
+        if (mSize == 0) return;
+        Arrays.fill(mUsed, false);
+        mSize = 0;
+    }
+
+    long[] toArray() {
+        long[] result = new long[mSize];
+        int count = 0;
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mUsed[i]) result[count++] = mKeys[i];
+        }
+        return result;
+    }
+
+    /**
+     * 删除index上的元素之后，把同一个探测链上后面的元素往前移
+     */
+    private void shiftKeys(int index) {
+        int last;
+        while (true) {
+            last = index;
+            index = (index + 1) & mMask;
+            while (true) {
+                if (!mUsed[index]) {
+                    mUsed[last] = false;
+                    return;
+                }
+                int slot = hash(mKeys[index]);
+                // slot不在(last, index]之间时，这个元素可以移到last
+                if (last <= index ? (last >= slot || slot > index) : (last >= slot && slot > index)) {
+                    break;
+                }
+                index = (index + 1) & mMask;
+            }
+            mKeys[last] = mKeys[index];
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = mKeys;
+        boolean[] used = mUsed;
+        allocate(capacity);
+        for (int i = 0; i < keys.length; i++) {
+            if (!used[i]) continue;
+            int index = hash(keys[i]);
+            while (mUsed[index]) {
+                index = (index + 1) & mMask;
+            }
+            mUsed[index] = true;
+            mKeys[index] = keys[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mUsed = new boolean[capacity];
+        mMask = capacity - 1;
+    }
+
+    private int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mMask;
+    }
+}
@@ -0,0 +1,102 @@
+package top.cokernut.customview.view;
+
+import java.util.Arrays;
+
+/**
+ * 选中标签的position到id的映射，按position排序保存在两个数组中，不装箱
+ * 和TagSelection一起平移、移除，标签被移除时adapter的数据已经变了，只能从这里取回它的id
+ */
+class PositionIdMap {
+    private int[] mPositions = new int[8];
+    private long[] mIds = new long[8];
+    private int mSize;
+
+    int size() {
+        return mSize;
+    }
+
+    void clear() {
+        mSize = 0;
+    }
+
+    void put(int position, long id) {
+        int index = Arrays.binarySearch(mPositions, 0, mSize, position);
+        if (index >= 0) {
+            mIds[index] = id;
+            return;
+        }
+        index = -index - 1;
+        if (mSize == mPositions.length) {
+            mPositions = Arrays.copyOf(mPositions, mSize * 2);
+            mIds = Arrays.copyOf(mIds, mSize * 2);
+        }
+        System.arraycopy(mPositions, index, mPositions, index + 1, mSize - index);
+        System.arraycopy(mIds, index, mIds, index + 1, mSize - index);
+        mPositions[index] = position;
+        mIds[index] = id;
+        mSize++;
+    }
+
+    /**
+     * 移除position的映射，同时从ids中移除它的id
+     */
+    void remove(int position, LongHashSet ids) {
+        int index = Arrays.binarySearch(mPositions, 0, mSize, position);
+        if (index < 0) return;
+        ids.remove(mIds[index]);
+        removeEntries(index, index + 1);
+    }
+
+    /**
+     * 移除[start, end)之间的映射，同时从ids中移除它们的id
+     */
+    void removeRange(int start, int end, LongHashSet ids) {
+        int from = lowerBound(start);
+        int to = lowerBound(end);
+        for (int i = from; i < to; i++) {
+            ids.remove(mIds[i]);
+        }
+        removeEntries(from, to);
+    }
+
+    /**
+     * 把[start, end)之间的position平移delta，调用方保证平移后顺序不变
+     */
+    void offset(int start, int end, int delta) {
+        int to = lowerBound(end);
+        for (int i = lowerBound(start); i < to; i++) {
+            mPositions[i] += delta;
+        }
+    }
+
+    /**
+     * 标签从fromPosition移动到toPosition，中间的标签依次平移一位
+     */
+    void move(int fromPosition, int toPosition) {
+        int index = Arrays.binarySearch(mPositions, 0, mSize, fromPosition);
+        boolean mapped = index >= 0;
+        long id = mapped ? mIds[index] : 0;
+        if (mapped) removeEntries(index, index + 1);
+        if (fromPosition < toPosition) {
+            offset(fromPosition + 1, toPosition + 1, -1);
+        } else {
+            offset(toPosition, fromPosition, 1);
+        }
+        if (mapped) put(toPosition, id);
+    }
+
+    /**
+     * @return 第一个不小于position的下标
+     */
+    private int lowerBound(int position) {
+        int index = Arrays.binarySearch(mPositions, 0, mSize, position);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private void removeEntries(int from, int to) {
+        if (from >= to) return;
+        System.arraycopy(mPositions, to, mPositions, from, mSize - to);
+        System.arraycopy(mIds, to, mIds, from, mSize - to);
+        mSize -= to - from;
+    }
+}
@@ -0,0 +1,78 @@
+package top.cokernut.customview.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+
+/**
+ * 单色静态图形的绘制缓存：图形画到ALPHA_8的Bitmap中，每一帧只需要用画笔的颜色合成一次，
+ * 修改颜色不需要重新绘制缓存，只有大小或形状变化时才需要invalidate
+ */
+class RenderCache {
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private boolean mValid;
+
+    boolean isValid() {
+        return mValid;
+    }
+
+    /**
+     * 开始重新绘制缓存，大小不变时复用原来的Bitmap
+     *
+     * @return 已经清空的画布，用不透明的画笔绘制图形
+     */
+    Canvas begin(int width, int height) {
+        if (mBitmap == null || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+            release();
+            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+            mCanvas = new Canvas(mBitmap);
+        } else {
+            mCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        }
+        mValid = true;
+        return mCanvas;
+    }
+
+    /**
+     * 用paint的颜色把缓存画到canvas的(0, 0)
+     */
+    void draw(Canvas canvas, Paint paint) {
+        canvas.drawBitmap(mBitmap, 0, 0, paint);
+    }
+
+    /**
+     * @return 缓存的Bitmap，begin之后才有，重新创建后和之前的不是同一个对象
+     */
+    Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    /**
+     * 大小或形状变化时调用，下一次绘制前需要重新begin
+     */
+    void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * 释放Bitmap，下一次绘制时重新创建
+     */
+    void release() {
+        mValid = false;
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+            mCanvas = null;
+        }
+    }
+
+    /**
+     * @return 缓存占用的内存，单位字节
+     */
+    int getByteCount() {
+        return mBitmap == null ? 0 : mBitmap.getByteCount();
+    }
+}
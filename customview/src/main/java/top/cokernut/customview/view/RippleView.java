@@ -1,25 +1,42 @@
 package top.cokernut.customview.view;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.ValueAnimator;
+import android.animation.TimeInterpolator;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.graphics.PointF;
+import android.graphics.RectF;
+import android.graphics.Shader;
 import android.util.AttributeSet;
 import android.view.View;
-import android.view.animation.LinearInterpolator;
+import android.view.animation.AccelerateDecelerateInterpolator;
 
 import top.cokernut.customview.R;
 
 /**
- * 波纹效果
+ * 波纹效果，也可以作为液体填充的进度指示器：
+ * 设置液面高度、振幅、波长和速度，裁剪成圆形或圆角矩形
  */
 public class RippleView extends View {
+    /**
+     * 每一帧平移缓存的路径绘制每一层波纹，裁剪形状时使用clipPath
+     */
+    public static final int RENDER_MODE_PATH = 0;
+    /**
+     * 一个周期的波纹预先画到Bitmap中作为BitmapShader，每一帧只修改Shader的矩阵，
+     * 用Shader直接绘制裁剪形状，不需要clipPath，适合较老的设备
+     */
+    public static final int RENDER_MODE_SHADER = 1;
+
+    public static final int SHAPE_RECT = 0;
+    public static final int SHAPE_CIRCLE = 1;
+    public static final int SHAPE_ROUND_RECT = 2;
+
     private int mLineColor = Color.BLUE; // 线的颜色
     private float mLineSize = 2; // 线的大小
 
@@ -27,16 +44,90 @@ public class RippleView extends View {
     private Path mPath;
     private float mWidth = 0f;
     private float mHeight = 0f;
-    private float mLength = 0f;
-    private ValueAnimator mAnimator;
+    private final DamageTracker mDamageTracker = new DamageTracker(this);
+    /**
+     * 波纹移动的动画，由共用的FrameClock驱动，默认一个周期2秒
+     */
+    private final FrameClockAnimation mAnimation = new FrameClockAnimation(this, new FrameClockAnimation.Listener() {
+        @Override
+        public boolean onAnimationFrame(long elapsedMillis) {
+            setPhase((elapsedMillis * mSpeed / 1000f) % 1f);
+            return true;
+        }
+    });
     private float mValue = 0f;
-    private PointF mStartPoint;
-    private PointF mControlOnePoint;
-    private PointF mControlTwoPoint;
-    private PointF mCenterPoint;
-    private PointF mEndPoint;
-    private PointF mControlThreePoint;
-    private PointF mControlFourPoint;
+    /**
+     * 最多的波纹层数
+     */
+    private static final int MAX_LAYERS = 8;
+    /**
+     * 振幅小于这个比例时按这个比例绘制，缓存的路径向下延伸到足够远，缩小后仍然能填满View的底部
+     */
+    private static final float MIN_AMPLITUDE = 0.05f;
+    /**
+     * 三次贝塞尔曲线的控制点偏离中线d时，波峰偏离中线d * √3 / 6
+     */
+    private static final float CREST_RATIO = 0.28867513f;
+    /**
+     * 每一层波纹的相位偏移（周期的比例）、振幅（默认振幅的比例）和透明度（0到1）
+     */
+    private final float[] mLayerPhases = new float[MAX_LAYERS];
+    private final float[] mLayerAmplitudes = new float[MAX_LAYERS];
+    private final float[] mLayerAlphas = new float[MAX_LAYERS];
+    private int mLayerCount;
+
+    /**
+     * 波长和振幅，小于等于0时按View的大小计算：波长等于宽度，波峰偏离中线高度的√3 / 12
+     */
+    private float mWavelength;
+    private float mAmplitude;
+    /**
+     * 按当前大小计算出的波长和波峰偏离中线的距离
+     */
+    private float mResolvedWavelength;
+    private float mResolvedAmplitude;
+    /**
+     * 每秒移动的周期数
+     */
+    private float mSpeed = 0.5f;
+    /**
+     * 液面高度，0在底部，1在顶部
+     */
+    private float mLevel = 0.5f;
+    private float mLevelFrom;
+    private float mLevelTo;
+    private long mLevelDuration = 500;
+    private TimeInterpolator mLevelInterpolator = new AccelerateDecelerateInterpolator();
+    /**
+     * 液面高度变化的动画
+     */
+    private final FrameClockAnimation mLevelAnimation = new FrameClockAnimation(this, new FrameClockAnimation.Listener() {
+        @Override
+        public boolean onAnimationFrame(long elapsedMillis) {
+            float fraction = mLevelDuration > 0 ? Math.min(1f, (float) elapsedMillis / mLevelDuration) : 1f;
+            applyLevel(mLevelFrom + (mLevelTo - mLevelFrom) * mLevelInterpolator.getInterpolation(fraction));
+            return fraction < 1f;
+        }
+    });
+
+    private int mRenderMode = RENDER_MODE_PATH;
+    private int mShape = SHAPE_RECT;
+    private float mCornerRadius;
+    private final RectF mShapeRect = new RectF();
+    private final Path mClipPath = new Path();
+    /**
+     * Shader模式使用：一个周期的波纹保存在ALPHA_8的Bitmap中，颜色在绘制时使用，
+     * 横向重复，纵向延伸边缘：上面是透明的，下面是填满的
+     */
+    private final RenderCache mShaderCache = new RenderCache();
+    private Bitmap mShaderBitmap;
+    private BitmapShader mShader;
+    private final Matrix mShaderMatrix = new Matrix();
+    private final Paint mShaderPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    /**
+     * Bitmap中波纹中线上下留出的透明和填满的像素
+     */
+    private static final int SHADER_PADDING = 2;
 
     public RippleView(Context context) {
         super(context);
@@ -63,14 +154,9 @@ public class RippleView extends View {
         mPaint.setAntiAlias(true);
         mPaint.setStyle(Paint.Style.FILL);
         mPaint.setStrokeWidth(mLineSize);
+        mShaderPaint.setColor(mLineColor);
         mPath = new Path();
-        mStartPoint = new PointF(0, 0);
-        mCenterPoint = new PointF(0, 0);
-        mEndPoint = new PointF(0, 0);
-        mControlOnePoint = new PointF(0, 0);
-        mControlTwoPoint = new PointF(0, 0);
-        mControlThreePoint = new PointF(0, 0);
-        mControlFourPoint = new PointF(0, 0);
+        addLayer(0f, 1f, 1f);
     }
 
     /**
@@ -79,86 +165,392 @@ public class RippleView extends View {
      * getMeasuredWidth()：对View上的内容进行测量后得到的View内容占据的宽度。
      * 很简单，getWidth()就是View显示之后的width，而getMeasuredWidth，
      * 从前面的源代码就可以看出来其实是在measure里面传入的参数，具体是否一样完全要看程序最后的计算。
+     * 波纹的路径和裁剪形状按显示的宽高生成，只在大小变化时生成一次
      */
-    // 如果对View的宽高进行修改了之后，不要调用super.onMeasure(widthMeasureSpec,heightMeasureSpec);
-    // 要调用setMeasuredDimension(widthsize,heightsize); 这个函数。
     @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-        mWidth = getMeasuredWidth();
-        mHeight = getMeasuredHeight();
-        mLength = mWidth/3;
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mWidth = w;
+        mHeight = h;
+        buildWavePath();
+        buildShape();
     }
 
+    /**
+     * 生成覆盖整个宽度再多一个周期的波纹：以中线为y=0，从-波长开始，每个周期一段三次贝塞尔曲线，
+     * 下面封闭成填充区域。绘制时平移相位 * 波长，始终覆盖0到mWidth
+     */
+    private void buildWavePath() {
+        mResolvedWavelength = mWavelength > 0 ? mWavelength : Math.max(1f, mWidth);
+        mResolvedAmplitude = mAmplitude > 0 ? mAmplitude : mHeight / 2 * CREST_RATIO;
+        float wavelength = mResolvedWavelength;
+        float control = mResolvedAmplitude / CREST_RATIO;
+        int periods = (int) Math.ceil(mWidth / wavelength) + 1;
+        // 振幅最小、液面在顶部时缩小后也能延伸到View的底部
+        float bottom = Math.max(mHeight, control) / MIN_AMPLITUDE;
+        mPath.reset();
+        float x = -wavelength;
+        mPath.moveTo(x, 0);
+        for (int i = 0; i < periods; i++) {
+            mPath.cubicTo(x + wavelength / 3, -control, x + wavelength / 3 * 2, control, x + wavelength, 0);
+            x += wavelength;
+        }
+        mPath.lineTo(x, bottom);
+        mPath.lineTo(-wavelength, bottom);
+        mPath.close();
+        mShaderCache.invalidate();
+    }
+
+    private void buildShape() {
+        mShapeRect.set(0, 0, mWidth, mHeight);
+        mClipPath.reset();
+        if (mShape == SHAPE_CIRCLE) {
+            mClipPath.addCircle(mWidth / 2, mHeight / 2, Math.min(mWidth, mHeight) / 2, Path.Direction.CW);
+        } else if (mShape == SHAPE_ROUND_RECT) {
+            mClipPath.addRoundRect(mShapeRect, mCornerRadius, mCornerRadius, Path.Direction.CW);
+        }
+    }
+
+    /**
+     * 两种模式都只做平移和缩放，不重新生成路径
+     */
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        mPath.reset();
-        mStartPoint.x = mWidth * (mValue - 1);
-        mStartPoint.y = mHeight / 2;
-        mCenterPoint.x = mWidth * mValue;
-        mCenterPoint.y = mHeight / 2;
-        mEndPoint.x = mWidth * (1+mValue);
-        mEndPoint.y = mHeight / 2;
-        mControlOnePoint.x = mStartPoint.x + mLength;
-        mControlOnePoint.y = 0;
-        mControlTwoPoint.x = mStartPoint.x + mLength * 2;
-        mControlTwoPoint.y = mHeight;
-        mControlThreePoint.x = mCenterPoint.x + mLength;
-        mControlThreePoint.y = 0;
-        mControlFourPoint.x = mCenterPoint.x + mLength * 2;
-        mControlFourPoint.y = mHeight;
-        mPath.moveTo(mStartPoint.x, mStartPoint.y);
-        mPath.cubicTo(mControlOnePoint.x, mControlOnePoint.y, mControlTwoPoint.x, mControlTwoPoint.y,
-                mCenterPoint.x, mCenterPoint.y);
-        mPath.moveTo(mCenterPoint.x, mCenterPoint.y);
-        mPath.cubicTo(mControlThreePoint.x, mControlThreePoint.y, mControlFourPoint.x, mControlFourPoint.y,
-                mEndPoint.x, mEndPoint.y);
-        mPath.lineTo(mEndPoint.x, mHeight);
-        mPath.lineTo(mStartPoint.x, mHeight);
-        mPath.lineTo(mStartPoint.x, mStartPoint.y);
+        if (mRenderMode == RENDER_MODE_SHADER && getWidth() > 0 && getHeight() > 0) {
+            drawShader(canvas);
+        } else {
+            drawLayers(canvas);
+        }
+        mDamageTracker.drawOverlay(canvas);
+    }
+
+    private void drawLayers(Canvas canvas) {
+        int count = canvas.save();
+        if (mShape != SHAPE_RECT) {
+            canvas.clipPath(mClipPath);
+        }
+        int alpha = Color.alpha(mLineColor);
+        float centerY = getLevelY(mLevel);
+        for (int i = 0; i < mLayerCount; i++) {
+            mPaint.setAlpha((int) (alpha * mLayerAlphas[i] + 0.5f));
+            drawLayer(canvas, i, (mValue + mLayerPhases[i]) % 1f * mResolvedWavelength, centerY, mWidth, mHeight);
+        }
+        mPaint.setAlpha(alpha);
+        canvas.restoreToCount(count);
+    }
+
+    /**
+     * 以centerY为中线绘制第index层波纹，振幅为0时是一个矩形
+     */
+    private void drawLayer(Canvas canvas, int index, float offsetX, float centerY, float right, float bottom) {
+        float amplitude = mLayerAmplitudes[index];
+        if (amplitude == 0) {
+            canvas.drawRect(0, centerY, right, bottom, mPaint);
+            return;
+        }
+        int count = canvas.save();
+        canvas.translate(offsetX, centerY);
+        canvas.scale(1, Math.max(amplitude, MIN_AMPLITUDE));
         canvas.drawPath(mPath, mPaint);
+        canvas.restoreToCount(count);
+    }
+
+    private void drawShader(Canvas canvas) {
+        float wavelength = mResolvedWavelength;
+        int bitmapWidth = (int) Math.ceil(wavelength);
+        float halfHeight = (float) Math.ceil(mResolvedAmplitude * getMaxAmplitude()) + SHADER_PADDING;
+        if (!mShaderCache.isValid()) {
+            int bitmapHeight = (int) halfHeight * 2;
+            Canvas cacheCanvas = mShaderCache.begin(bitmapWidth, bitmapHeight);
+            // 缓存中只保存每一层叠加后的透明度，颜色在绘制时使用
+            cacheCanvas.save();
+            cacheCanvas.scale(bitmapWidth / wavelength, 1);
+            mPaint.setColor(Color.BLACK);
+            for (int i = 0; i < mLayerCount; i++) {
+                mPaint.setAlpha((int) (255 * mLayerAlphas[i] + 0.5f));
+                drawLayer(cacheCanvas, i, mLayerPhases[i] * wavelength, halfHeight, wavelength, bitmapHeight);
+            }
+            mPaint.setColor(mLineColor);
+            cacheCanvas.restore();
+            Bitmap bitmap = mShaderCache.getBitmap();
+            if (bitmap != mShaderBitmap) {
+                mShaderBitmap = bitmap;
+                mShader = new BitmapShader(bitmap, Shader.TileMode.REPEAT, Shader.TileMode.CLAMP);
+                mShaderPaint.setShader(mShader);
+            }
+        }
+        mShaderMatrix.setScale(wavelength / bitmapWidth, 1);
+        mShaderMatrix.postTranslate(mValue * wavelength, getLevelY(mLevel) - halfHeight);
+        mShader.setLocalMatrix(mShaderMatrix);
+        if (mShape == SHAPE_CIRCLE) {
+            canvas.drawCircle(mWidth / 2, mHeight / 2, Math.min(mWidth, mHeight) / 2, mShaderPaint);
+        } else if (mShape == SHAPE_ROUND_RECT) {
+            canvas.drawRoundRect(mShapeRect, mCornerRadius, mCornerRadius, mShaderPaint);
+        } else {
+            canvas.drawRect(mShapeRect, mShaderPaint);
+        }
+    }
+
+    private float getLevelY(float level) {
+        return mHeight * (1 - level);
+    }
+
+    /**
+     * 波纹水平移动时只有最高的波峰和最低的波谷之间的一条会变化，上面始终是空的，下面始终是填满的
+     */
+    private void invalidateWave() {
+        invalidateBand(getLevelY(mLevel), getLevelY(mLevel));
+    }
+
+    /**
+     * 刷新中线从fromY移动到toY时变化的区域
+     */
+    private void invalidateBand(float fromY, float toY) {
+        float amplitude = mResolvedAmplitude * getMaxAmplitude();
+        mDamageTracker.invalidate(0, (int) Math.floor(Math.min(fromY, toY) - amplitude) - 1,
+                getWidth(), (int) Math.ceil(Math.max(fromY, toY) + amplitude) + 1);
+    }
+
+    /**
+     * 设置波纹移动的进度，动画和测试使用
+     *
+     * @param value 0到1，一个周期
+     */
+    void setPhase(float value) {
+        mValue = value;
+        invalidateWave();
+    }
+
+    private float getMaxAmplitude() {
+        float max = 0;
+        for (int i = 0; i < mLayerCount; i++) {
+            max = Math.max(max, Math.max(mLayerAmplitudes[i], MIN_AMPLITUDE));
+        }
+        return max;
+    }
+
+    /**
+     * 增加一层波纹，所有层共用同一条缓存的路径，按添加的顺序绘制
+     *
+     * @param phase     相位偏移，周期的比例，0到1
+     * @param amplitude 振幅，setAmplitude设置的振幅的比例，0到1
+     * @param alpha     透明度，0到1，和线的颜色的透明度相乘
+     * @return 这一层的序号
+     */
+    public int addLayer(float phase, float amplitude, float alpha) {
+        if (mLayerCount == MAX_LAYERS) {
+            throw new IllegalStateException("RippleView supports at most " + MAX_LAYERS + " layers");
+        }
+        mLayerPhases[mLayerCount] = ((phase % 1f) + 1f) % 1f;
+        mLayerAmplitudes[mLayerCount] = Math.max(0f, Math.min(1f, amplitude));
+        mLayerAlphas[mLayerCount] = Math.max(0f, Math.min(1f, alpha));
+        mShaderCache.invalidate();
+        invalidate();
+        return mLayerCount++;
+    }
+
+    /**
+     * 删除所有波纹层，之后需要重新addLayer
+     */
+    public void clearLayers() {
+        mLayerCount = 0;
+        mShaderCache.invalidate();
+        invalidate();
+    }
+
+    public int getLayerCount() {
+        return mLayerCount;
+    }
+
+    /**
+     * 设置绘制模式
+     *
+     * @param mode RENDER_MODE_PATH或RENDER_MODE_SHADER
+     */
+    public void setRenderMode(int mode) {
+        if (mode != RENDER_MODE_PATH && mode != RENDER_MODE_SHADER) {
+            throw new IllegalArgumentException("Unknown render mode: " + mode);
+        }
+        if (mRenderMode == mode) return;
+        mRenderMode = mode;
+        if (mode == RENDER_MODE_PATH) {
+            releaseShader();
+        }
+        invalidate();
+    }
+
+    public int getRenderMode() {
+        return mRenderMode;
+    }
+
+    /**
+     * 设置裁剪形状。RENDER_MODE_PATH模式使用clipPath，Android 4.3以下开启硬件加速时不支持，
+     * 这种情况使用RENDER_MODE_SHADER
+     *
+     * @param shape SHAPE_RECT、SHAPE_CIRCLE或SHAPE_ROUND_RECT
+     */
+    public void setShape(int shape) {
+        if (shape != SHAPE_RECT && shape != SHAPE_CIRCLE && shape != SHAPE_ROUND_RECT) {
+            throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        mShape = shape;
+        buildShape();
+        invalidate();
+    }
+
+    public int getShape() {
+        return mShape;
+    }
+
+    /**
+     * 设置SHAPE_ROUND_RECT的圆角半径
+     */
+    public void setCornerRadius(float radius) {
+        mCornerRadius = radius;
+        buildShape();
+        invalidate();
+    }
+
+    public float getCornerRadius() {
+        return mCornerRadius;
+    }
+
+    /**
+     * 设置液面高度，按setLevelDuration和setLevelInterpolator播放动画
+     *
+     * @param level 0到1，0在底部，1在顶部
+     */
+    public void setLevel(float level) {
+        setLevel(level, true);
+    }
+
+    /**
+     * 设置液面高度
+     *
+     * @param level   0到1，0在底部，1在顶部
+     * @param animate 是否播放动画
+     */
+    public void setLevel(float level, boolean animate) {
+        level = Math.max(0f, Math.min(1f, level));
+        mLevelAnimation.stop();
+        if (animate && mLevelDuration > 0 && getWidth() > 0) {
+            mLevelFrom = mLevel;
+            mLevelTo = level;
+            mLevelAnimation.start();
+        } else {
+            applyLevel(level);
+        }
+    }
+
+    private void applyLevel(float level) {
+        if (level == mLevel) return;
+        float fromY = getLevelY(mLevel);
+        mLevel = level;
+        invalidateBand(fromY, getLevelY(level));
+    }
+
+    /**
+     * @return 当前的液面高度，动画过程中是动画的进度
+     */
+    public float getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * 设置液面高度变化的动画时长，0表示不播放动画
+     */
+    public void setLevelDuration(long duration) {
+        mLevelDuration = Math.max(0, duration);
+    }
+
+    public long getLevelDuration() {
+        return mLevelDuration;
+    }
+
+    /**
+     * 设置液面高度变化的动画曲线，默认先加速后减速
+     */
+    public void setLevelInterpolator(TimeInterpolator interpolator) {
+        mLevelInterpolator = interpolator;
+    }
+
+    public TimeInterpolator getLevelInterpolator() {
+        return mLevelInterpolator;
+    }
+
+    /**
+     * 设置波峰偏离中线的距离
+     *
+     * @param amplitude 单位px，小于等于0时为高度的√3 / 12
+     */
+    public void setAmplitude(float amplitude) {
+        mAmplitude = amplitude;
+        buildWavePath();
+        invalidate();
+    }
+
+    public float getAmplitude() {
+        return mResolvedAmplitude;
+    }
+
+    /**
+     * 设置波长
+     *
+     * @param wavelength 单位px，小于等于0时等于宽度
+     */
+    public void setWavelength(float wavelength) {
+        mWavelength = wavelength;
+        buildWavePath();
+        invalidate();
+    }
+
+    public float getWavelength() {
+        return mResolvedWavelength;
+    }
+
+    /**
+     * 设置波纹移动的速度，正在播放的动画按新的速度重新计算相位
+     *
+     * @param speed 每秒移动的周期数，默认0.5
+     */
+    public void setSpeed(float speed) {
+        mSpeed = speed;
+    }
+
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    private void releaseShader() {
+        mShaderCache.release();
+        mShaderBitmap = null;
+        mShader = null;
+        mShaderPaint.setShader(null);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        releaseShader();
+    }
+
+    /**
+     * @return 局部刷新的统计，可以查看每秒刷新的像素数
+     */
+    public DamageTracker getDamageTracker() {
+        return mDamageTracker;
     }
 
     public void startAnim() {
         stopAnim();
-        startViewAnim(0f, 1f, 2000);
+        mAnimation.start();
     }
 
     public void stopAnim() {
-        if (mAnimator != null) {
-            clearAnimation();
-            mAnimator.setRepeatCount(0);
-            mAnimator.cancel();
-            mAnimator.end();
-            mValue = 0;
-            postInvalidate();
-        }
-    }
-
-    private ValueAnimator startViewAnim(float start, float end, int time) {
-        mAnimator = ValueAnimator.ofFloat(start, end);
-        mAnimator.setDuration(time);
-        mAnimator.setInterpolator(new LinearInterpolator());
-        mAnimator.setRepeatCount(ValueAnimator.INFINITE);
-        mAnimator.setRepeatMode(ValueAnimator.RESTART);
-        mAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                mValue = (float) animation.getAnimatedValue();
-                invalidate();
-            }
-        });
-        mAnimator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-            }
-        });
-        if (!mAnimator.isRunning()) {
-            mAnimator.start();
-        }
-        return mAnimator;
+        mAnimation.stop();
+        mValue = 0;
+        postInvalidate();
     }
 
     /**
@@ -178,6 +570,8 @@ public class RippleView extends View {
     public void setLineColor(int color) {
         mLineColor = color;
         mPaint.setColor(mLineColor);
+        mShaderPaint.setColor(mLineColor);
+        invalidate();
     }
 
     /**
@@ -197,5 +591,6 @@ public class RippleView extends View {
     public void setLineSize(float size) {
         mLineSize = size;
         mPaint.setStrokeWidth(size);
+        invalidate();
     }
 }
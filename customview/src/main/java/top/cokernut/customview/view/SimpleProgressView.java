@@ -1,17 +1,14 @@
 package top.cokernut.customview.view;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.view.View;
-import android.view.animation.LinearInterpolator;
 
 import java.util.ArrayList;
 
@@ -21,15 +18,36 @@ import top.cokernut.customview.R;
  * 刷新View
  */
 public class SimpleProgressView extends View {
-    private ArrayList<Integer> mColors; // 默认颜色
+    private static final int TRACK_COLOR = Color.argb(50, 255, 255, 255);
+
+    private int[] mColors = new int[]{Color.GREEN}; // 默认颜色
 
     private Paint mPaint;
     private float mWidth = 0f;
-    private float mPadding = 0f;
+    private float mPadding = 10f;
     private float startAngle = 0f;
     private float angle = 120f;
-    private RectF rectF;
-    private ValueAnimator valueAnimator;
+    /**
+     * 圆弧的边界，只在大小变化时计算
+     */
+    private final RectF rectF = new RectF();
+    /**
+     * 旋转时需要刷新的区域：圆环加上描边，不包括View中圆环以外的部分
+     */
+    private final Rect mRingBounds = new Rect();
+    private final DamageTracker mDamageTracker = new DamageTracker(this);
+    private static final long ANIM_DURATION = 1000;
+    /**
+     * 旋转动画，由共用的FrameClock驱动，一秒转一圈
+     */
+    private final FrameClockAnimation mAnimation = new FrameClockAnimation(this, new FrameClockAnimation.Listener() {
+        @Override
+        public boolean onAnimationFrame(long elapsedMillis) {
+            //刷新视图
+            setStartAngle(360f * (elapsedMillis % ANIM_DURATION) / ANIM_DURATION);
+            return true;
+        }
+    });
 
     public SimpleProgressView(Context context) {
         super(context);
@@ -49,10 +67,7 @@ public class SimpleProgressView extends View {
     private void init(AttributeSet attrs, int defStyle) {
         final TypedArray a = getContext().obtainStyledAttributes(
                 attrs, R.styleable.SimpleProgressView, defStyle, 0);
-        mColors = new ArrayList<>();
-        mColors.add(Color.GREEN);
-        int color = a.getColor(R.styleable.SimpleProgressView_progressColor, mColors.get(0));
-        mColors.set(0, color);
+        mColors[0] = a.getColor(R.styleable.SimpleProgressView_progressColor, mColors[0]);
         a.recycle(); //回收TypedArray,用于后续调用时可复用
 
         mPaint = new Paint();
@@ -71,88 +86,78 @@ public class SimpleProgressView extends View {
      * getHeight，getWidth 显示的高度，宽度
      * 实际上在当屏幕可以包裹内容的时候，他们的值是相等的，只有当view超出屏幕后，
      * 才能看出他们的区别。当超出屏幕后，getMeasuredHeight()等于getHeight()加上屏幕之外没有显示的高度。
-     * @param widthMeasureSpec
-     * @param heightMeasureSpec
+     * 圆弧的边界按显示的宽高计算，只在大小变化时计算一次
      */
     @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-        if (getMeasuredWidth() > getHeight()) {
-            mWidth = getMeasuredHeight();
-        } else {
-            mWidth = getMeasuredWidth();
-        }
-        mPadding = 10f;
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mWidth = Math.min(w, h);
+        rectF.set(mPadding, mPadding, mWidth - mPadding, mWidth - mPadding);
+        // 描边宽度的一半，再多一个像素留给抗锯齿
+        float outset = mPaint.getStrokeWidth() / 2 + 1;
+        mRingBounds.set((int) Math.floor(rectF.left - outset), (int) Math.floor(rectF.top - outset),
+                (int) Math.ceil(rectF.right + outset), (int) Math.ceil(rectF.bottom + outset));
     }
 
+    /**
+     * 绘制过程中不创建任何对象，颜色直接从int数组中取，不需要拆箱
+     */
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        mPaint.setColor(Color.argb(50, 255, 255, 255));
+        mPaint.setColor(TRACK_COLOR);
         canvas.drawCircle(mWidth / 2, mWidth / 2, mWidth / 2 - mPadding, mPaint);
-        rectF = new RectF(mPadding, mPadding, mWidth - mPadding, mWidth - mPadding);
-        if (mColors.size() < 2) {
-            mPaint.setColor(mColors.get(0));
+        int[] colors = mColors;
+        if (colors.length < 2) {
+            mPaint.setColor(colors[0]);
             canvas.drawArc(rectF, startAngle, angle, false, mPaint);
         } else {
-            angle = 360f / mColors.size();
-            for (int i = 0; i < mColors.size(); i++) {
-                mPaint.setColor(mColors.get(i));
+            angle = 360f / colors.length;
+            for (int i = 0; i < colors.length; i++) {
+                mPaint.setColor(colors[i]);
                 canvas.drawArc(rectF, (startAngle + angle * i) % 360, angle, false, mPaint);
             }
         }
+        mDamageTracker.drawOverlay(canvas);
     }
 
-    public void startAnim() {
-        stopAnim();
-        startViewAnim(0f, 1f, 1000);
+    /**
+     * 设置圆弧的起始角度，动画和测试使用
+     */
+    void setStartAngle(float angle) {
+        if (startAngle == angle) return;
+        startAngle = angle;
+        mDamageTracker.invalidate(mRingBounds.left, mRingBounds.top, mRingBounds.right, mRingBounds.bottom);
     }
 
-    private ValueAnimator startViewAnim(float startF, float endF, int time) {
-        valueAnimator = ValueAnimator.ofFloat(startF, endF);    //Value值的伴随动画的过渡范围
-        valueAnimator.setDuration(time);                        //一遍动画的时间
-        valueAnimator.setInterpolator(new LinearInterpolator());//插值器，动画形式，LinearInterpolator代表均匀变化
-        valueAnimator.setRepeatCount(ValueAnimator.INFINITE);   //循环次数
-        valueAnimator.setRepeatMode(ValueAnimator.RESTART);     //循环模式
-
-        valueAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator valueAnimator) {
-                float value = (float) valueAnimator.getAnimatedValue();
-                startAngle = 360 * value;
-                //刷新视图
-                invalidate();
-            }
-        });
-        valueAnimator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-            }
-        });
-        if (!valueAnimator.isRunning()) {
-            valueAnimator.start();
-        }
-        return valueAnimator;
+    /**
+     * @return 局部刷新的统计，可以查看每秒刷新的像素数
+     */
+    public DamageTracker getDamageTracker() {
+        return mDamageTracker;
     }
 
-    public void stopAnim() {
-        if (valueAnimator != null) {
-            clearAnimation();
-            valueAnimator.setRepeatCount(0);
-            valueAnimator.cancel();
-            valueAnimator.end();
-        }
+    public void startAnim() {
+        stopAnim();
+        mAnimation.start();
     }
 
+    public void stopAnim() {
+        mAnimation.stop();
+        setStartAngle(0);
+    }
 
     /**
      * 取得颜色
      *
-     * @return 一个int类型的数组，其中的值为16进制的颜色
+     * @return 颜色列表，其中的值为16进制的颜色；返回的是副本，修改它不会影响View，需要通过setProgressColors设置
      */
     public ArrayList<Integer> getProgressColors() {
-        return mColors;
+        ArrayList<Integer> colors = new ArrayList<>(mColors.length);
+        for (int color : mColors) {
+            colors.add(color);
+        }
+        return colors;
     }
 
     /**
@@ -162,10 +167,8 @@ public class SimpleProgressView extends View {
      */
     public void setProgressColors(int... colors) {
         if (colors.length > 0) {
-            mColors.clear();
-            for (int i = 0; i < colors.length; i++) {
-                mColors.add(colors[i]);
-            }
+            mColors = colors.clone();
+            invalidate();
         }
     }
 }
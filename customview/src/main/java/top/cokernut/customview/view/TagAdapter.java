@@ -1,17 +1,26 @@
 package top.cokernut.customview.view;
 
 import android.view.View;
+import android.widget.Checkable;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 public abstract class TagAdapter<T> {
+    /**
+     * getItemId的默认返回值，表示没有id
+     */
+    public static final long NO_ID = -1;
+
     private List<T> mTagDatas;
     private OnDataChangedListener mOnDataChangedListener;
-    private HashSet<Integer> mCheckedPosList = new HashSet<Integer>();
+    private TagSelection mCheckedPosList = new TagSelection();
+    /**
+     * 默认的onCreateView返回null之后为false，之后只使用getView
+     */
+    private boolean mCreateViewSupported = true;
 
     public TagAdapter(List<T> datas) {
         mTagDatas = datas;
@@ -23,6 +32,19 @@ public abstract class TagAdapter<T> {
 
     interface OnDataChangedListener {
         void onChanged();
+
+        void onItemRangeInserted(int positionStart, int itemCount);
+
+        void onItemRangeRemoved(int positionStart, int itemCount);
+
+        void onItemRangeChanged(int positionStart, int itemCount);
+
+        void onItemMoved(int fromPosition, int toPosition);
+
+        /**
+         * setSelectedList替换了预选中的位置
+         */
+        void onSelectedListChanged();
     }
 
     void setOnDataChangedListener(OnDataChangedListener listener) {
@@ -30,21 +52,29 @@ public abstract class TagAdapter<T> {
     }
 
     public void setSelectedList(int... poses) {
-        Set<Integer> set = new HashSet<>();
+        mCheckedPosList.clear();
         for (int pos : poses) {
-            set.add(pos);
+            mCheckedPosList.add(pos);
         }
-        setSelectedList(set);
+        notifySelectedListChanged();
     }
 
     public void setSelectedList(Set<Integer> set) {
         mCheckedPosList.clear();
-        if (set != null)
-            mCheckedPosList.addAll(set);
-        notifyDataChanged();
+        if (set != null) {
+            for (int pos : set) {
+                mCheckedPosList.add(pos);
+            }
+        }
+        notifySelectedListChanged();
+    }
+
+    private void notifySelectedListChanged() {
+        if (mOnDataChangedListener != null)
+            mOnDataChangedListener.onSelectedListChanged();
     }
 
-    HashSet<Integer> getPreCheckedList() {
+    TagSelection getPreCheckedList() {
         return mCheckedPosList;
     }
 
@@ -57,15 +87,171 @@ public abstract class TagAdapter<T> {
         mOnDataChangedListener.onChanged();
     }
 
+    /**
+     * 通知position位置插入了一个新的标签，数据需要已经插入
+     */
+    public void notifyItemInserted(int position) {
+        notifyItemRangeInserted(position, 1);
+    }
+
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        if (mOnDataChangedListener != null && itemCount > 0)
+            mOnDataChangedListener.onItemRangeInserted(positionStart, itemCount);
+    }
+
+    /**
+     * 通知position位置的标签被移除了，数据需要已经移除
+     */
+    public void notifyItemRemoved(int position) {
+        notifyItemRangeRemoved(position, 1);
+    }
+
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        if (mOnDataChangedListener != null && itemCount > 0)
+            mOnDataChangedListener.onItemRangeRemoved(positionStart, itemCount);
+    }
+
+    /**
+     * 通知position位置的标签内容发生了变化，只会重新绑定这个标签
+     */
+    public void notifyItemChanged(int position) {
+        notifyItemRangeChanged(position, 1);
+    }
+
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        if (mOnDataChangedListener != null && itemCount > 0)
+            mOnDataChangedListener.onItemRangeChanged(positionStart, itemCount);
+    }
+
+    /**
+     * 通知标签从fromPosition移动到了toPosition，数据需要已经移动
+     */
+    public void notifyItemMoved(int fromPosition, int toPosition) {
+        if (mOnDataChangedListener != null && fromPosition != toPosition)
+            mOnDataChangedListener.onItemMoved(fromPosition, toPosition);
+    }
+
+    /**
+     * 替换数据，用TagDiff计算新旧数据的差异，只通知发生变化的标签
+     * 通知按从前往后的顺序发出，position是新数据中的位置，通知时getItem已经返回新数据。
+     * 顺序变化的标签按移除再插入处理，需要保留选中状态时使用hasStableIds
+     *
+     * @param datas    新数据
+     * @param callback 判断新旧数据是否为同一个标签、内容是否相同
+     */
+    public void setDatas(List<T> datas, TagDiff.ItemCallback<T> callback) {
+        TagDiff.Result result = TagDiff.calculate(mTagDatas == null ? new ArrayList<T>() : mTagDatas,
+                datas, callback);
+        mTagDatas = datas;
+        if (mOnDataChangedListener != null)
+            result.dispatchUpdatesTo(this);
+    }
+
     public T getItem(int position) {
         return mTagDatas.get(position);
     }
 
-    public abstract View getView(FlowLayout parent, int position, T t);
+    /**
+     * 创建并绑定标签View
+     * 默认使用onCreateView和onBindView；只重写getView的adapter每次刷新都会创建新的View，无法复用。
+     * getView和onCreateView至少需要重写一个
+     */
+    public View getView(FlowLayout parent, int position, T t) {
+        View view = onCreateView(parent, getItemViewType(position));
+        if (view == null) {
+            throw new IllegalStateException(
+                    "TagAdapter must override getView, or onCreateView together with onBindView");
+        }
+        onBindView(view, position, t);
+        return view;
+    }
+
+    /**
+     * @return 标签View的类型，只有同类型的标签View之间才会互相复用
+     */
+    public int getItemViewType(int position) {
+        return 0;
+    }
+
+    /**
+     * 创建一个可以复用的标签View，配合onBindView使用
+     * 没有重写getView时必须重写这个方法，默认返回null，表示不支持复用
+     */
+    public View onCreateView(FlowLayout parent, int viewType) {
+        return null;
+    }
+
+    /**
+     * TagFlowLayout使用：adapter重写了onCreateView时创建可以复用的标签View
+     *
+     * @return 只重写了getView时返回null
+     */
+    View createReusableView(FlowLayout parent, int viewType) {
+        if (!mCreateViewSupported) return null;
+        View view = onCreateView(parent, viewType);
+        if (view == null) {
+            mCreateViewSupported = false;
+        }
+        return view;
+    }
+
+    /**
+     * 把数据绑定到onCreateView创建的标签View上，标签被复用时只会调用这个方法
+     */
+    public void onBindView(View view, int position, T t) {
+    }
+
+    /**
+     * 纯文字标签返回标签的文字，TagFlowLayout开启异步预测量时会在后台线程测量这些文字
+     *
+     * @return 标签文字，返回null表示不是纯文字标签，此时不能预测量
+     */
+    public CharSequence getText(int position, T t) {
+        return null;
+    }
+
+    /**
+     * 返回true时getItemId必须为每个标签返回唯一且不随数据变化的id，
+     * TagFlowLayout会按id保存选中状态，数据刷新、插入、移除、移动之后选中状态都会保留
+     */
+    public boolean hasStableIds() {
+        return false;
+    }
+
+    /**
+     * @return position位置标签的id，hasStableIds返回true时才会调用
+     */
+    public long getItemId(int position) {
+        return NO_ID;
+    }
 
     public boolean setSelected(int position, T t) {
         return false;
     }
 
+    /**
+     * TagFlowLayout直接添加标签View（不使用TagView容器）时，标签被选中或绑定为选中状态时调用
+     * 默认实现：标签View实现了Checkable时调用setChecked(true)，否则调用setActivated(true)，
+     * 背景可以用state_checked或state_activated的selector
+     */
+    public void onSelected(int position, View view) {
+        setViewChecked(view, true);
+    }
+
+    /**
+     * 和onSelected对应，标签取消选中或绑定为未选中状态时调用
+     */
+    public void unSelected(int position, View view) {
+        setViewChecked(view, false);
+    }
+
+    private static void setViewChecked(View view, boolean checked) {
+        if (view instanceof Checkable) {
+            ((Checkable) view).setChecked(checked);
+        } else {
+            view.setActivated(checked);
+        }
+    }
+
 
 }
\ No newline at end of file
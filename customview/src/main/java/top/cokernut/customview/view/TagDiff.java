@@ -0,0 +1,257 @@
+package top.cokernut.customview.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 计算新旧两组标签数据的差异，转换成插入、移除、变化的通知
+ * 先去掉相同的头尾，中间部分使用Myers差分算法；编辑距离过大时退化为整体替换中间部分
+ * 不检测移动：顺序变化的标签会被当作移除后再插入，hasStableIds返回false时这些标签的选中状态会丢失
+ */
+public class TagDiff {
+    /**
+     * Myers算法每一步都要保存一份状态，编辑距离超过这个值时不再继续查找
+     */
+    private static final int MAX_EDIT_DISTANCE = 1024;
+
+    private static final int TYPE_INSERTED = 0;
+    private static final int TYPE_REMOVED = 1;
+    private static final int TYPE_CHANGED = 2;
+
+    public interface ItemCallback<T> {
+        /**
+         * @return 新旧数据是否为同一个标签，比如id相同
+         */
+        boolean areItemsTheSame(T oldItem, T newItem);
+
+        /**
+         * 只在areItemsTheSame返回true时调用
+         *
+         * @return 标签显示的内容是否相同，不同时会通知标签变化
+         */
+        boolean areContentsTheSame(T oldItem, T newItem);
+    }
+
+    public interface UpdateCallback {
+        void onInserted(int position, int count);
+
+        void onRemoved(int position, int count);
+
+        void onChanged(int position, int count);
+    }
+
+    /**
+     * 差分结果，按顺序依次执行每一个操作即可把旧数据变成新数据
+     * 操作从前往后排列，position都是新数据中的位置：执行到某个操作时，它前面的标签已经和新数据一致，
+     * 插入和变化的标签可以直接从新数据中按position读取
+     */
+    public static class Result {
+        /**
+         * 每三个int为一个操作：类型、position、数量
+         */
+        private int[] mOps = new int[48];
+        private int mSize;
+
+        private void add(int type, int position, int count) {
+            if (count <= 0) return;
+            // 和上一个变化操作相邻时合并
+            if (type == TYPE_CHANGED && mSize > 0 && mOps[mSize - 3] == TYPE_CHANGED
+                    && mOps[mSize - 2] == position + count) {
+                mOps[mSize - 2] = position;
+                mOps[mSize - 1] += count;
+                return;
+            }
+            if (mSize + 3 > mOps.length) {
+                mOps = Arrays.copyOf(mOps, mOps.length * 2);
+            }
+            mOps[mSize++] = type;
+            mOps[mSize++] = position;
+            mOps[mSize++] = count;
+        }
+
+        public void dispatchUpdatesTo(UpdateCallback callback) {
+            for (int i = 0; i < mSize; i += 3) {
+                switch (mOps[i]) {
+                    case TYPE_INSERTED:
+                        callback.onInserted(mOps[i + 1], mOps[i + 2]);
+                        break;
+                    case TYPE_REMOVED:
+                        callback.onRemoved(mOps[i + 1], mOps[i + 2]);
+                        break;
+                    case TYPE_CHANGED:
+                        callback.onChanged(mOps[i + 1], mOps[i + 2]);
+                        break;
+                }
+            }
+        }
+
+        /**
+         * 生成时从后往前添加，完成后翻转成从前往后的顺序
+         */
+        private void reverse() {
+            for (int i = 0, j = mSize - 3; i < j; i += 3, j -= 3) {
+                for (int k = 0; k < 3; k++) {
+                    int tmp = mOps[i + k];
+                    mOps[i + k] = mOps[j + k];
+                    mOps[j + k] = tmp;
+                }
+            }
+        }
+
+        public void dispatchUpdatesTo(final TagAdapter<?> adapter) {
+            dispatchUpdatesTo(new UpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    adapter.notifyItemRangeInserted(position, count);
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    adapter.notifyItemRangeRemoved(position, count);
+                }
+
+                @Override
+                public void onChanged(int position, int count) {
+                    adapter.notifyItemRangeChanged(position, count);
+                }
+            });
+        }
+    }
+
+    private TagDiff() {
+    }
+
+    /**
+     * 计算差异，新旧数据必须是两个不同的List
+     */
+    public static <T> Result calculate(List<T> oldList, List<T> newList, ItemCallback<T> callback) {
+        int oldSize = oldList.size();
+        int newSize = newList.size();
+        // 相同的头部
+        int prefix = 0;
+        while (prefix < oldSize && prefix < newSize
+                && callback.areItemsTheSame(oldList.get(prefix), newList.get(prefix))) {
+            prefix++;
+        }
+        // 相同的尾部
+        int suffix = 0;
+        while (suffix < oldSize - prefix && suffix < newSize - prefix
+                && callback.areItemsTheSame(oldList.get(oldSize - 1 - suffix), newList.get(newSize - 1 - suffix))) {
+            suffix++;
+        }
+        Result result = new Result();
+        Walker<T> walker = new Walker<>(oldList, newList, callback, result, oldSize, newSize);
+        // 从后往前匹配，生成的操作最后再翻转
+        for (int i = 0; i < suffix; i++) {
+            walker.match(oldSize - 1 - i, newSize - 1 - i);
+        }
+        diffMiddle(oldList, newList, callback, prefix, oldSize - suffix, newSize - suffix, walker);
+        for (int i = prefix - 1; i >= 0; i--) {
+            walker.match(i, i);
+        }
+        walker.match(-1, -1);
+        result.reverse();
+        return result;
+    }
+
+    /**
+     * Myers差分，回溯时从后往前把匹配的位置交给walker
+     */
+    private static <T> void diffMiddle(List<T> oldList, List<T> newList, ItemCallback<T> callback,
+                                       int start, int oldEnd, int newEnd, Walker<T> walker) {
+        int n = oldEnd - start;
+        int m = newEnd - start;
+        if (n == 0 || m == 0) return;
+        int maxD = Math.min(n + m, MAX_EDIT_DISTANCE);
+        int offset = maxD + 1;
+        int[] v = new int[2 * offset + 1];
+        List<int[]> trace = new ArrayList<>();
+        int found = -1;
+        for (int d = 0; d <= maxD && found < 0; d++) {
+            // 保存本轮开始前的状态，k的范围是[-d-1, d+1]
+            trace.add(Arrays.copyOfRange(v, offset - d - 1, offset + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && callback.areItemsTheSame(oldList.get(start + x), newList.get(start + y))) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    found = d;
+                    break;
+                }
+            }
+        }
+        if (found < 0) {
+            // 编辑距离太大，中间部分整体替换
+            return;
+        }
+        int x = n;
+        int y = m;
+        for (int d = found; d >= 0; d--) {
+            int[] prev = trace.get(d);
+            int base = d + 1;
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && prev[base + k - 1] < prev[base + k + 1])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = prev[base + prevK];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                x--;
+                y--;
+                walker.match(start + x, start + y);
+            }
+            x = prevX;
+            y = prevY;
+        }
+    }
+
+    /**
+     * 从后往前依次接收匹配的新旧位置，两次匹配之间的旧数据被移除，新数据被插入
+     * 操作按新数据的位置记录：执行到这里时前面的标签已经是新数据，匹配的标签在新数据中的位置就是当前位置
+     */
+    private static class Walker<T> {
+        private final List<T> mOldList;
+        private final List<T> mNewList;
+        private final ItemCallback<T> mCallback;
+        private final Result mResult;
+        private int mOldPos;
+        private int mNewPos;
+
+        Walker(List<T> oldList, List<T> newList, ItemCallback<T> callback, Result result, int oldSize, int newSize) {
+            mOldList = oldList;
+            mNewList = newList;
+            mCallback = callback;
+            mResult = result;
+            mOldPos = oldSize;
+            mNewPos = newSize;
+        }
+
+        /**
+         * @param oldPos 匹配的旧位置，-1表示开头
+         * @param newPos 匹配的新位置，-1表示开头
+         */
+        void match(int oldPos, int newPos) {
+            // 翻转后同一个位置先移除再插入
+            mResult.add(TYPE_INSERTED, newPos + 1, mNewPos - newPos - 1);
+            mResult.add(TYPE_REMOVED, newPos + 1, mOldPos - oldPos - 1);
+            if (oldPos >= 0 && !mCallback.areContentsTheSame(mOldList.get(oldPos), mNewList.get(newPos))) {
+                mResult.add(TYPE_CHANGED, newPos, 1);
+            }
+            mOldPos = oldPos;
+            mNewPos = newPos;
+        }
+    }
+}
@@ -5,36 +5,100 @@ import android.content.res.TypedArray;
 import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Parcelable;
-import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewTreeObserver;
 
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Set;
 
 import top.cokernut.customview.R;
 
-public class TagFlowLayout extends FlowLayout implements TagAdapter.OnDataChangedListener {
+public class TagFlowLayout extends FlowLayout implements TagAdapter.OnDataChangedListener,
+        TagPreMeasurer.Callback {
     private TagAdapter mTagAdapter;
     private boolean mAutoSelectEffect = true;
     private int mSelectedMax = -1;//-1为不限制数量
     private static final String TAG = "TagFlowLayout";
-    private MotionEvent mMotionEvent;
-    private Set<Integer> mSelectedView = new HashSet<Integer>();
+    /**
+     * 最近一次抬起手指的位置，performClick时用来查找点击的标签
+     */
+    private boolean mHasClickPoint;
+    private int mClickX;
+    private int mClickY;
+    private final TagSelection mSelectedView = new TagSelection();
+    /**
+     * adapter有稳定id时，同时按id保存选中状态，数据整体刷新后用id找回选中的标签
+     * 移除标签时id会暂时留在集合中，下一次整体刷新时清理
+     */
+    private LongHashSet mSelectedIds = new LongHashSet();
+    private LongHashSet mScratchIds = new LongHashSet();
+    /**
+     * 选中标签的position到id的映射，标签被移除时adapter的数据已经变了，从这里取回id
+     */
+    private final PositionIdMap mSelectedIdMap = new PositionIdMap();
+    /**
+     * 上一次回调之后新选中、取消选中的位置，每一帧合并成一次回调
+     */
+    private final TagSelection mPendingAdded = new TagSelection();
+    private final TagSelection mPendingRemoved = new TagSelection();
+    private boolean mSelectionDispatchPending;
+    private final SelectionEditor mSelectionEditor = new SelectionEditor();
+    /**
+     * adapter修改预选中位置时使用，不影响调用方正在进行的修改
+     */
+    private final SelectionEditor mPreCheckedEditor = new SelectionEditor();
+    private TagTextStyle mPreMeasureStyle;
+    private int mPreMeasureGeneration;
+    /**
+     * 非虚拟化模式下正在等待预测量结果，此时界面上还是旧数据，局部更新无法应用
+     */
+    private boolean mPreMeasurePending;
+    private int mDefaultTagMargin = -1;
+    /**
+     * 直接模式：标签View直接作为子View添加，不再包一层TagView容器，
+     * 选中状态通过adapter的onSelected/unSelected设置到标签View上
+     */
+    private boolean mDirectChildren;
+
+    /**
+     * 虚拟化模式：mVirtualEngine保存所有position的换行结果，mAttachedViews只保存可见行的标签
+     */
+    private boolean mVirtualized;
+    private FlowLayoutEngine mVirtualEngine = new FlowLayoutEngine();
+    private SparseArray<View> mAttachedViews = new SparseArray<>();
+    private TagViewPool mViewPool = new TagViewPool();
+    /**
+     * 已测量过的标签大小，按position保存，宽度为-1表示还没有测量过
+     */
+    private int[] mItemWidth = new int[0];
+    private int[] mItemHeight = new int[0];
+    private int[] mItemMargins = new int[0];
+    private int mEstimatedWidth;
+    private int mEstimatedHeight;
+    private int mLastWidthMeasureSpec;
+    private int mLastHeightMeasureSpec;
+    private int mFirstAttached = -1;
+    private int mLastAttached = -1;
+    private final Rect mVisibleRect = new Rect();
 
     public TagFlowLayout(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
         TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.TagFlowLayout);
         mAutoSelectEffect = ta.getBoolean(R.styleable.TagFlowLayout_auto_select_effect, true);
         mSelectedMax = ta.getInt(R.styleable.TagFlowLayout_max_select, -1);
+        mDirectChildren = ta.getBoolean(R.styleable.TagFlowLayout_direct_children, false);
         ta.recycle();
 
         if (mAutoSelectEffect) {
             setClickable(true);
         }
+        mEstimatedWidth = dip2px(context, 64);
+        mEstimatedHeight = dip2px(context, 32);
     }
 
     public TagFlowLayout(Context context, AttributeSet attrs) {
@@ -51,16 +115,27 @@ public class TagFlowLayout extends FlowLayout implements TagAdapter.OnDataChange
         int cCount = getChildCount();
 
         for (int i = 0; i < cCount; i++) {
-            TagView tagView = (TagView) getChildAt(i);
-            if (tagView.getVisibility() == View.GONE) continue;
+            View child = getChildAt(i);
+            if (!(child instanceof TagView) || child.getVisibility() == View.GONE) continue;
+            TagView tagView = (TagView) child;
             if (tagView.getTagView().getVisibility() == View.GONE) {
                 tagView.setVisibility(View.GONE);
             }
         }
+        if (mVirtualized) {
+            measureVirtual(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
     }
 
     public interface OnSelectListener {
+        /**
+         * 点击标签改变选中状态后立即回调，beginSelection、setSelectedList等代码修改不会回调，
+         * 需要合并后的回调或代码修改的回调时使用OnSelectionChangedListener
+         *
+         * @param selectPosSet 选中位置的副本，可以修改
+         */
         void onSelected(Set<Integer> selectPosSet);
     }
 
@@ -71,6 +146,24 @@ public class TagFlowLayout extends FlowLayout implements TagAdapter.OnDataChange
         if (mOnSelectListener != null) setClickable(true);
     }
 
+    public interface OnSelectionChangedListener {
+        /**
+         * 同一帧内的多次选中变化合并成一次回调，参数都是不可修改的快照
+         *
+         * @param selection 当前选中的位置
+         * @param added     上一次回调之后新选中的位置
+         * @param removed   上一次回调之后取消选中的位置
+         */
+        void onSelectionChanged(TagSelection.Snapshot selection, TagSelection.Snapshot added,
+                                TagSelection.Snapshot removed);
+    }
+
+    private OnSelectionChangedListener mOnSelectionChangedListener;
+
+    public void setOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        mOnSelectionChangedListener = listener;
+    }
+
     public interface OnTagClickListener {
         boolean onTagClick(View view, int position, FlowLayout parent);
     }
@@ -86,79 +179,544 @@ public class TagFlowLayout extends FlowLayout implements TagAdapter.OnDataChange
     public void setAdapter(TagAdapter adapter) {
         mTagAdapter = adapter;
         mTagAdapter.setOnDataChangedListener(this);
-        mSelectedView.clear();
-        changeAdapter();
+        clearSelection();
+        clearPendingSelection();
+        refreshTags();
 
     }
 
-    private void changeAdapter() {
-        removeAllViews();
+    /**
+     * 开启异步预测量：adapter的标签都是纯文字（TagAdapter.getText不为null）时，
+     * 数据变化后在后台线程测量文字并完成换行，主线程只创建View并按计算好的位置摆放。
+     * style必须和adapter创建的标签一致，传null关闭
+     *
+     * @param style 标签样式
+     */
+    public void setPreMeasureStyle(TagTextStyle style) {
+        mPreMeasureStyle = style;
+    }
+
+    public TagTextStyle getPreMeasureStyle() {
+        return mPreMeasureStyle;
+    }
+
+    private void refreshTags() {
+        // 还没有返回的预测量结果都作废
+        mPreMeasureGeneration++;
+        mPreMeasurePending = false;
+        if (mVirtualized) {
+            changeAdapterVirtual();
+            preMeasure();
+        } else if (preMeasure()) {
+            mPreMeasurePending = true;
+        } else {
+            changeAdapter(null);
+        }
+    }
+
+    /**
+     * 把标签文字交给后台线程测量
+     *
+     * @return 不满足预测量条件时返回false
+     */
+    private boolean preMeasure() {
+        int availableWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        if (mPreMeasureStyle == null || availableWidth <= 0) return false;
+        TagAdapter adapter = mTagAdapter;
+        CharSequence[] texts = new CharSequence[adapter.getCount()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = adapter.getText(i, adapter.getItem(i));
+            if (texts[i] == null) return false;
+        }
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        configureEngine(engine);
+        TagPreMeasurer.measureAsync(texts, mPreMeasureStyle, availableWidth, engine, mPreMeasureGeneration, this);
+        return true;
+    }
+
+    @Override
+    public void onPreMeasured(FlowLayoutEngine engine, int generation) {
+        if (generation != mPreMeasureGeneration) return;
+        mPreMeasurePending = false;
+        if (mVirtualized) {
+            // 虚拟化模式下只用预测量的结果替换预估大小，已经测量过的标签保持不变
+            int count = Math.min(engine.getItemCount(), mTagAdapter.getCount());
+            for (int i = 0; i < count; i++) {
+                if (mItemWidth[i] >= 0) continue;
+                mItemWidth[i] = engine.getItemWidth(i);
+                mItemHeight[i] = engine.getItemHeight(i);
+                mItemMargins[i * 4] = mPreMeasureStyle.getMarginLeft();
+                mItemMargins[i * 4 + 1] = mPreMeasureStyle.getMarginTop();
+                mItemMargins[i * 4 + 2] = mPreMeasureStyle.getMarginRight();
+                mItemMargins[i * 4 + 3] = mPreMeasureStyle.getMarginBottom();
+            }
+            requestLayout();
+            return;
+        }
+        int availableWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        if (engine.getAvailableWidth() != availableWidth || engine.getItemCount() != mTagAdapter.getCount()) {
+            // 测量期间宽度或数据发生了变化，结果不能用
+            changeAdapter(null);
+            return;
+        }
+        changeAdapter(engine);
+    }
+
+    /**
+     * 重新创建所有标签
+     *
+     * @param precomputed 预测量的结果，为null时正常测量
+     */
+    private void changeAdapter(FlowLayoutEngine precomputed) {
+        mAttachedViews.clear();
+        TagAdapter adapter = mTagAdapter;
+        int count = adapter.getCount();
+        // 已有的标签原地重新绑定，多余的放回回收池
+        for (int i = getChildCount() - 1; i >= count; i--) {
+            View item = getChildAt(i);
+            removeViewAt(i);
+            recycleItem(item);
+        }
+        TagSelection preCheckedList = mTagAdapter.getPreCheckedList();
+        for (int i = 0; i < count; i++) {
+            View item;
+            if (i < getChildCount()) {
+                View old = getChildAt(i);
+                item = bindItem(old, i);
+                if (item != old) {
+                    // 直接模式下不能复用的标签View被替换了
+                    removeViewAt(i);
+                    recycleItem(old);
+                    addView(item, i);
+                }
+            } else {
+                item = obtainItem(i);
+                addView(item);
+            }
+            // 预测量时大小已经在后台线程算好了，测量时直接使用engine中的大小
+            boolean checked = mSelectedView.contains(i) || preCheckedList.contains(i);
+            if (mTagAdapter.setSelected(i, adapter.getItem(i))) {
+                addSelected(i);
+                checked = true;
+            }
+            setItemChecked(item, i, checked);
+        }
+        addPreChecked(preCheckedList);
+        if (precomputed != null) {
+            setPrecomputedLayout(precomputed);
+        }
+    }
+
+    /**
+     * 从回收池取得一个标签并绑定position对应的数据，回收池中没有时新建
+     */
+    private View obtainItem(int position) {
+        View item = mViewPool.get(mTagAdapter.getClass(), mTagAdapter.getItemViewType(position));
+        if (item != null && (item instanceof TagView) == mDirectChildren) {
+            // 回收池可能被其他模式的TagFlowLayout共用，形式不同的标签不能复用
+            mViewPool.onRejected();
+            item = null;
+        }
+        if (item == null && !mDirectChildren) {
+            item = new TagView(getContext());
+        }
+        return bindItem(item, position);
+    }
+
+    /**
+     * 把position对应的数据绑定到标签上，item是TagView容器或直接模式下的标签View
+     * 已有同类型、可复用的标签View时只调用onBindView，否则重新创建
+     *
+     * @param item 已有的标签，直接模式下可以为null
+     * @return 绑定好的标签，直接模式下标签View不能复用时返回新建的View
+     */
+    private View bindItem(View item, int position) {
         TagAdapter adapter = mTagAdapter;
-        TagView tagViewContainer = null;
-        HashSet preCheckedList = mTagAdapter.getPreCheckedList();
-        for (int i = 0; i < adapter.getCount(); i++) {
-            View tagView = adapter.getView(this, i, adapter.getItem(i));
-
-            tagViewContainer = new TagView(getContext());
-//            ViewGroup.MarginLayoutParams clp = (ViewGroup.MarginLayoutParams) tagView.getLayoutParams();
-//            ViewGroup.MarginLayoutParams lp = new ViewGroup.MarginLayoutParams(clp);
-//            lp.width = ViewGroup.LayoutParams.WRAP_CONTENT;
-//            lp.height = ViewGroup.LayoutParams.WRAP_CONTENT;
-//            lp.topMargin = clp.topMargin;
-//            lp.bottomMargin = clp.bottomMargin;
-//            lp.leftMargin = clp.leftMargin;
-//            lp.rightMargin = clp.rightMargin;
-            tagView.setDuplicateParentStateEnabled(true);
+        Object data = adapter.getItem(position);
+        int viewType = adapter.getItemViewType(position);
+        LayoutParams lp = item != null && item.getLayoutParams() instanceof LayoutParams
+                ? (LayoutParams) item.getLayoutParams() : null;
+        View tagView = item == null ? null : getItemContent(item);
+        if (tagView != null && lp != null && lp.mRecyclable && lp.mViewType == viewType
+                && lp.mAdapterClass == adapter.getClass()) {
+            adapter.onBindView(tagView, position, data);
+            // 标签内容变了，不能再使用上一次的测量结果
+            lp.notifyContentChanged();
+        } else {
+            tagView = adapter.createReusableView(this, viewType);
+            boolean recyclable = tagView != null;
+            if (recyclable) {
+                adapter.onBindView(tagView, position, data);
+            } else {
+                // 没有实现onCreateView的adapter只能每次都调用getView
+                tagView = adapter.getView(this, position, data);
+            }
             if (tagView.getLayoutParams() != null) {
-                tagViewContainer.setLayoutParams(tagView.getLayoutParams());
+                lp = generateLayoutParams(tagView.getLayoutParams());
             } else {
-                MarginLayoutParams lp = (MarginLayoutParams) new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
-                lp.setMargins(dip2px(getContext(), 5),
-                        dip2px(getContext(), 5),
-                        dip2px(getContext(), 5),
-                        dip2px(getContext(), 5));
-                tagViewContainer.setLayoutParams(lp);
+                int margin = getDefaultTagMargin();
+                lp = new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
+                lp.setMargins(margin, margin, margin, margin);
+            }
+            lp.mRecyclable = recyclable;
+            lp.mAdapterClass = adapter.getClass();
+            lp.mViewType = viewType;
+            if (mDirectChildren) {
+                item = tagView;
+            } else {
+                TagView tagViewContainer = (TagView) item;
+                tagViewContainer.removeAllViews();
+                tagView.setDuplicateParentStateEnabled(true);
+                tagViewContainer.addView(tagView);
+            }
+            item.setLayoutParams(lp);
+        }
+        lp.mPosition = position;
+        return item;
+    }
+
+    /**
+     * @return 标签中由adapter创建的View，TagView容器为空时返回null
+     */
+    private static View getItemContent(View item) {
+        return item instanceof TagView ? ((TagView) item).getTagView() : item;
+    }
+
+    private static int getItemPosition(View item) {
+        return ((LayoutParams) item.getLayoutParams()).mPosition;
+    }
+
+    /**
+     * 设置标签的选中效果：TagView容器直接setChecked，直接模式下交给adapter的onSelected/unSelected
+     */
+    private void setItemChecked(View item, int position, boolean checked) {
+        if (item instanceof TagView) {
+            ((TagView) item).setChecked(checked);
+        } else if (checked) {
+            mTagAdapter.onSelected(position, item);
+        } else {
+            mTagAdapter.unSelected(position, item);
+        }
+    }
+
+    /**
+     * 没有设置间距时，标签默认有5dp的margin；设置了间距时由间距控制标签之间的距离
+     */
+    private int getDefaultTagMargin() {
+        if (getHorizontalSpacing() > 0 || getVerticalSpacing() > 0) {
+            return 0;
+        }
+        if (mDefaultTagMargin < 0) {
+            mDefaultTagMargin = dip2px(getContext(), 5);
+        }
+        return mDefaultTagMargin;
+    }
+
+    /**
+     * 取得position对应的标签
+     *
+     * @return 虚拟化模式下标签不在屏幕内时返回null
+     */
+    private View getItemAt(int position) {
+        if (mVirtualized) {
+            return mAttachedViews.get(position);
+        }
+        return getChildAt(position);
+    }
+
+    /**
+     * 开启虚拟化模式：只为和可见区域相交的行创建标签，移出可见区域的TagView放回回收池。
+     * 换行使用已经测量过的标签大小，还没测量过的标签使用预估大小；
+     * 设置了预测量样式时，会在后台线程测量所有标签的真实大小。
+     * 适合放在ScrollView等滚动容器中的大量标签。
+     *
+     * @param virtualized 是否开启
+     */
+    public void setVirtualized(boolean virtualized) {
+        if (mVirtualized == virtualized) return;
+        mVirtualized = virtualized;
+        if (mTagAdapter != null) {
+            refreshTags();
+        }
+    }
+
+    public boolean isVirtualized() {
+        return mVirtualized;
+    }
+
+    /**
+     * 开启直接模式：adapter创建的标签View直接作为子View添加，不再包一层TagView（FrameLayout）容器，
+     * 少一层View的测量、布局和绘制。选中状态通过TagAdapter.onSelected/unSelected设置到标签View上，
+     * 默认实现对Checkable调用setChecked（比如CheckedTextView），否则调用setActivated。
+     * 默认关闭，保持使用TagView容器的行为
+     *
+     * @param directChildren 是否开启
+     */
+    public void setDirectChildren(boolean directChildren) {
+        if (mDirectChildren == directChildren) return;
+        mDirectChildren = directChildren;
+        // 已有的标签形式不同，全部放回回收池，取出时会丢弃形式不同的标签
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            View item = getChildAt(i);
+            removeViewAt(i);
+            recycleItem(item);
+        }
+        mAttachedViews.clear();
+        mFirstAttached = -1;
+        mLastAttached = -1;
+        if (mTagAdapter != null) {
+            refreshTags();
+        }
+    }
+
+    public boolean isDirectChildren() {
+        return mDirectChildren;
+    }
+
+    /**
+     * 设置虚拟化模式下还没有测量过的标签的预估大小（不含margin）
+     */
+    public void setEstimatedTagSize(int width, int height) {
+        mEstimatedWidth = width;
+        mEstimatedHeight = height;
+        if (mVirtualized) {
+            requestLayout();
+        }
+    }
+
+    public TagViewPool getViewPool() {
+        return mViewPool;
+    }
+
+    /**
+     * 设置回收池，同一个界面上的多个TagFlowLayout可以共用一个回收池
+     * 回收池只能在主线程使用
+     */
+    public void setViewPool(TagViewPool pool) {
+        mViewPool = pool == null ? new TagViewPool() : pool;
+    }
+
+    /**
+     * 虚拟化模式下的数据变化：回收所有标签，清空已测量的大小
+     */
+    private void changeAdapterVirtual() {
+        for (int i = 0; i < mAttachedViews.size(); i++) {
+            View view = mAttachedViews.valueAt(i);
+            removeViewInLayout(view);
+            recycleItem(view);
+        }
+        mAttachedViews.clear();
+        mFirstAttached = -1;
+        mLastAttached = -1;
+        removeAllViews();
+        int count = mTagAdapter.getCount();
+        ensureItemSizeCapacity(count);
+        Arrays.fill(mItemWidth, -1);
+        TagAdapter adapter = mTagAdapter;
+        TagSelection preCheckedList = adapter.getPreCheckedList();
+        for (int i = 0; i < count; i++) {
+            if (adapter.setSelected(i, adapter.getItem(i))) {
+                addSelected(i);
             }
-            tagViewContainer.addView(tagView);
-            addView(tagViewContainer);
+        }
+        addPreChecked(preCheckedList);
+        requestLayout();
+    }
+
+    private void recycleItem(View item) {
+        LayoutParams lp = (LayoutParams) item.getLayoutParams();
+        if (!lp.mRecyclable) {
+            // 直接模式下getView创建的标签View无法复用，TagView容器清空后还可以复用
+            if (!(item instanceof TagView)) return;
+            ((TagView) item).removeAllViews();
+        }
+        mViewPool.put(lp.mAdapterClass, lp.mViewType, item);
+    }
 
+    private void recordItemSize(int position, View child) {
+        if (child.getVisibility() == View.GONE) {
+            mItemWidth[position] = 0;
+            mItemHeight[position] = 0;
+            Arrays.fill(mItemMargins, position * 4, position * 4 + 4, 0);
+            return;
+        }
+        MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
+        mItemWidth[position] = child.getMeasuredWidth();
+        mItemHeight[position] = child.getMeasuredHeight();
+        mItemMargins[position * 4] = lp.leftMargin;
+        mItemMargins[position * 4 + 1] = lp.topMargin;
+        mItemMargins[position * 4 + 2] = lp.rightMargin;
+        mItemMargins[position * 4 + 3] = lp.bottomMargin;
+    }
 
-            if (preCheckedList.contains(i)) {
-                tagViewContainer.setChecked(true);
+    private void measureVirtual(int widthMeasureSpec, int heightMeasureSpec) {
+        mLastWidthMeasureSpec = widthMeasureSpec;
+        mLastHeightMeasureSpec = heightMeasureSpec;
+        int widthMode = MeasureSpec.getMode(widthMeasureSpec);
+        int widthSize = MeasureSpec.getSize(widthMeasureSpec);
+        int heightMode = MeasureSpec.getMode(heightMeasureSpec);
+        int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+        for (int i = 0; i < mAttachedViews.size(); i++) {
+            View child = mAttachedViews.valueAt(i);
+            measureChildCached(child, widthMeasureSpec, heightMeasureSpec);
+            recordItemSize(mAttachedViews.keyAt(i), child);
+        }
+        int count = mTagAdapter == null ? 0 : mTagAdapter.getCount();
+        int margin = getDefaultTagMargin();
+        FlowLayoutEngine engine = mVirtualEngine;
+        configureEngine(engine);
+        engine.setItemCount(count);
+        // engine按start/end理解左右margin
+        int start = isLayoutDirectionRtl() ? 2 : 0;
+        for (int i = 0; i < count; i++) {
+            if (mItemWidth[i] >= 0) {
+                engine.setItem(i, mItemWidth[i], mItemHeight[i], mItemMargins[i * 4 + start],
+                        mItemMargins[i * 4 + 1], mItemMargins[i * 4 + 2 - start], mItemMargins[i * 4 + 3]);
+            } else {
+                engine.setItem(i, mEstimatedWidth, mEstimatedHeight, margin, margin, margin, margin);
             }
+        }
+        engine.breakLines(widthSize - getPaddingLeft() - getPaddingRight());
+        setMeasuredDimension(
+                widthMode == MeasureSpec.EXACTLY ? widthSize : engine.getContentWidth() + getPaddingLeft() + getPaddingRight(),
+                heightMode == MeasureSpec.EXACTLY ? heightSize : engine.getContentHeight() + getPaddingTop() + getPaddingBottom()
+        );
+    }
 
-            if (mTagAdapter.setSelected(i, adapter.getItem(i))) {
-                mSelectedView.add(i);
-                tagViewContainer.setChecked(true);
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (!mVirtualized) {
+            super.onLayout(changed, l, t, r, b);
+            return;
+        }
+        mVirtualEngine.layout(getGravity(), getAlignItems(), isLayoutDirectionRtl(), getPaddingLeft(), getPaddingTop(),
+                getWidth() - getPaddingLeft() - getPaddingRight());
+        fillVisibleLines(true);
+        int count = mTagAdapter == null ? 0 : mTagAdapter.getCount();
+        dispatchOverflow(Math.min(mVirtualEngine.getOverflowStart(), count), count);
+    }
+
+    /**
+     * 为和可见区域相交的行绑定标签，回收其余的标签并摆放所有标签
+     *
+     * @param inLayout 是否在onLayout中调用
+     */
+    private void fillVisibleLines(boolean inLayout) {
+        if (mTagAdapter == null) return;
+        FlowLayoutEngine engine = mVirtualEngine;
+        int top;
+        int bottom;
+        if (getLocalVisibleRect(mVisibleRect)) {
+            top = mVisibleRect.top;
+            bottom = mVisibleRect.bottom;
+        } else {
+            // 不可见或还没有attach时，至少准备好第一屏
+            top = 0;
+            bottom = getResources().getDisplayMetrics().heightPixels;
+        }
+        // 上下各多准备半屏，避免滚动时频繁绑定
+        int overscan = (bottom - top) / 2;
+        int firstLine = engine.getLineForOffset(top - overscan - getPaddingTop());
+        int lastLine = engine.getLineForOffset(bottom + overscan - getPaddingTop());
+        int start = engine.getLineStart(firstLine);
+        int end = engine.getLineEnd(lastLine);
+        if (start == mFirstAttached && end == mLastAttached && !inLayout) return;
+        mFirstAttached = start;
+        mLastAttached = end;
+        // 回收移出可见区域的标签
+        for (int i = mAttachedViews.size() - 1; i >= 0; i--) {
+            int position = mAttachedViews.keyAt(i);
+            if (position < start || position >= end) {
+                View view = mAttachedViews.valueAt(i);
+                mAttachedViews.removeAt(i);
+                removeViewInLayout(view);
+                recycleItem(view);
             }
         }
-        mSelectedView.addAll(preCheckedList);
+        // 绑定进入可见区域的标签
+        boolean sizeChanged = false;
+        for (int position = start; position < end; position++) {
+            if (mAttachedViews.get(position) != null) continue;
+            View view = obtainItem(position);
+            setItemChecked(view, position, mSelectedView.contains(position));
+            addViewInLayout(view, -1, view.getLayoutParams(), true);
+            mAttachedViews.put(position, view);
+            measureChildCached(view, mLastWidthMeasureSpec, mLastHeightMeasureSpec);
+            if (view.getMeasuredWidth() != engine.getItemWidth(position)
+                    || view.getMeasuredHeight() != engine.getItemHeight(position)) {
+                sizeChanged = true;
+            }
+            recordItemSize(position, view);
+        }
+        for (int i = 0; i < mAttachedViews.size(); i++) {
+            int position = mAttachedViews.keyAt(i);
+            View child = mAttachedViews.valueAt(i);
+            int lc = engine.getItemLeft(position);
+            int tc = engine.getItemTop(position);
+            child.layout(lc, tc, lc + child.getMeasuredWidth(), tc + child.getMeasuredHeight());
+        }
+        invalidate();
+        if (sizeChanged) {
+            // 真实大小和预估大小不一致，需要重新换行
+            if (inLayout) {
+                post(mRelayoutRunnable);
+            } else {
+                requestLayout();
+            }
+        }
+    }
+
+    private final Runnable mRelayoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            requestLayout();
+        }
+    };
 
+    private final ViewTreeObserver.OnScrollChangedListener mOnScrollChangedListener =
+            new ViewTreeObserver.OnScrollChangedListener() {
+                @Override
+                public void onScrollChanged() {
+                    if (mVirtualized && !isLayoutRequested()) {
+                        fillVisibleLines(false);
+                    }
+                }
+            };
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnScrollChangedListener(mOnScrollChangedListener);
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnScrollChangedListener(mOnScrollChangedListener);
+        removeCallbacks(mRelayoutRunnable);
+        super.onDetachedFromWindow();
+    }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         if (event.getAction() == MotionEvent.ACTION_UP) {
-            mMotionEvent = MotionEvent.obtain(event);
+            mHasClickPoint = true;
+            mClickX = (int) event.getX();
+            mClickY = (int) event.getY();
         }
         return super.onTouchEvent(event);
     }
 
     @Override
     public boolean performClick() {
-        if (mMotionEvent == null) return super.performClick();
-
-        int x = (int) mMotionEvent.getX();
-        int y = (int) mMotionEvent.getY();
-        mMotionEvent = null;
+        if (!mHasClickPoint) return super.performClick();
+        mHasClickPoint = false;
 
-        TagView child = findChild(x, y);
-        int pos = findPosByView(child);
+        View child = findChild(mClickX, mClickY);
         if (child != null) {
-            doSelect(child, pos);
+            int pos = getItemPosition(child);
+            doSelect(pos);
             if (mOnTagClickListener != null) {
-                return mOnTagClickListener.onTagClick(child.getTagView(), pos, this);
+                return mOnTagClickListener.onTagClick(getItemContent(child), pos, this);
             }
         }
         return true;
@@ -168,41 +726,228 @@ public class TagFlowLayout extends FlowLayout implements TagAdapter.OnDataChange
     public void setMaxSelectCount(int count) {
         if (mSelectedView.size() > count) {
             Log.w(TAG, "you has already select more than " + count + " views , so it will be clear .");
-            mSelectedView.clear();
+            clearSelection();
         }
         mSelectedMax = count;
     }
 
     public Set<Integer> getSelectedList() {
-        return new HashSet<Integer>(mSelectedView);
+        return new HashSet<Integer>(mSelectedView.snapshot());
     }
 
-    private void doSelect(TagView child, int position) {
+    /**
+     * @return 选中位置的不可修改快照，不复制、不装箱，可以用contains(int)直接查询
+     */
+    public TagSelection.Snapshot getSelection() {
+        return mSelectedView.snapshot();
+    }
+
+    private void doSelect(int position) {
         if (mAutoSelectEffect) {
-            if (!child.isChecked()) {
+            if (!mSelectedView.contains(position)) {
                 //处理max_select=1的情况
                 if (mSelectedMax == 1 && mSelectedView.size() == 1) {
-                    Iterator<Integer> iterator = mSelectedView.iterator();
-                    Integer preIndex = iterator.next();
-                    TagView pre = (TagView) getChildAt(preIndex);
-                    pre.setChecked(false);
-                    child.setChecked(true);
-                    mSelectedView.remove(preIndex);
-                    mSelectedView.add(position);
+                    setPositionSelected(mSelectedView.nextSetBit(0), false);
+                    setPositionSelected(position, true);
                 } else {
                     if (mSelectedMax > 0 && mSelectedView.size() >= mSelectedMax)
                         return;
-                    child.setChecked(true);
-                    mSelectedView.add(position);
+                    setPositionSelected(position, true);
                 }
             } else {
-                child.setChecked(false);
-                mSelectedView.remove(position);
+                setPositionSelected(position, false);
             }
+            scheduleSelectionDispatch();
             if (mOnSelectListener != null) {
-                mOnSelectListener.onSelected(new HashSet<Integer>(mSelectedView));
+                mOnSelectListener.onSelected(new HashSet<Integer>(mSelectedView.snapshot()));
+            }
+        }
+    }
+
+    /**
+     * 开始一次批量修改选中状态，修改在commit时一起生效：只更新受影响的标签，
+     * OnSelectionChangedListener在下一帧收到一次合并后的回调，OnSelectListener不会回调。返回的editor是复用的，同一时间只能进行一次修改
+     * 批量修改不受max_select限制
+     */
+    public SelectionEditor beginSelection() {
+        mSelectionEditor.reset();
+        return mSelectionEditor;
+    }
+
+    public final class SelectionEditor {
+        private final TagSelection mAdd = new TagSelection();
+        private final TagSelection mRemove = new TagSelection();
+        private boolean mClear;
+        private boolean mSelectAll;
+
+        private SelectionEditor() {
+        }
+
+        private void reset() {
+            mAdd.clear();
+            mRemove.clear();
+            mClear = false;
+            mSelectAll = false;
+        }
+
+        public SelectionEditor select(int position) {
+            mRemove.remove(position);
+            mAdd.add(position);
+            return this;
+        }
+
+        public SelectionEditor unselect(int position) {
+            mAdd.remove(position);
+            mRemove.add(position);
+            return this;
+        }
+
+        public SelectionEditor selectAll() {
+            reset();
+            mSelectAll = true;
+            return this;
+        }
+
+        public SelectionEditor clear() {
+            reset();
+            mClear = true;
+            return this;
+        }
+
+        public void commit() {
+            int count = mTagAdapter == null ? 0 : mTagAdapter.getCount();
+            if (mClear) {
+                for (int i = mSelectedView.nextSetBit(0); i >= 0; i = mSelectedView.nextSetBit(i + 1)) {
+                    if (!mAdd.contains(i)) setPositionSelected(i, false);
+                }
+            }
+            if (mSelectAll) {
+                for (int i = 0; i < count; i++) {
+                    if (!mRemove.contains(i)) setPositionSelected(i, true);
+                }
+            }
+            for (int i = mAdd.nextSetBit(0); i >= 0 && i < count; i = mAdd.nextSetBit(i + 1)) {
+                setPositionSelected(i, true);
+            }
+            for (int i = mRemove.nextSetBit(0); i >= 0; i = mRemove.nextSetBit(i + 1)) {
+                setPositionSelected(i, false);
+            }
+            reset();
+            scheduleSelectionDispatch();
+        }
+    }
+
+    /**
+     * 修改一个位置的选中状态，同步更新已绑定的标签并记录到待回调的变化中
+     */
+    private void setPositionSelected(int position, boolean selected) {
+        if (selected) {
+            if (!mSelectedView.contains(position)) {
+                addSelected(position);
+                if (!mPendingRemoved.remove(position)) mPendingAdded.add(position);
+            }
+        } else if (mSelectedView.contains(position)) {
+            removeSelected(position);
+            if (!mPendingAdded.remove(position)) mPendingRemoved.add(position);
+        } else {
+            return;
+        }
+        View view = getItemAt(position);
+        if (view != null) {
+            setItemChecked(view, position, selected);
+        }
+    }
+
+    private void scheduleSelectionDispatch() {
+        if (mSelectionDispatchPending) return;
+        if (mPendingAdded.isEmpty() && mPendingRemoved.isEmpty()) return;
+        mSelectionDispatchPending = true;
+        postOnAnimation(mDispatchSelectionRunnable);
+    }
+
+    private final Runnable mDispatchSelectionRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mSelectionDispatchPending = false;
+            if (mPendingAdded.isEmpty() && mPendingRemoved.isEmpty()) return;
+            TagSelection.Snapshot selection = mSelectedView.snapshot();
+            TagSelection.Snapshot added = mPendingAdded.snapshot();
+            TagSelection.Snapshot removed = mPendingRemoved.snapshot();
+            mPendingAdded.clear();
+            mPendingRemoved.clear();
+            if (mOnSelectionChangedListener != null) {
+                mOnSelectionChangedListener.onSelectionChanged(selection, added, removed);
             }
         }
+    };
+
+    /**
+     * 整体刷新时选中状态按数据重新计算，之前还没有回调的变化不再有意义
+     */
+    private void clearPendingSelection() {
+        mPendingAdded.clear();
+        mPendingRemoved.clear();
+    }
+
+    /**
+     * 标签插入、移除时把选中状态和待回调的变化一起平移
+     */
+    private void offsetSelection(int start, int end, int delta) {
+        mSelectedView.offset(start, end, delta);
+        mSelectedIdMap.offset(start, end, delta);
+        mPendingAdded.offset(start, end, delta);
+        mPendingRemoved.offset(start, end, delta);
+    }
+
+    private void removeSelectionRange(int start, int end) {
+        mSelectedView.removeRange(start, end);
+        mSelectedIdMap.removeRange(start, end, mSelectedIds);
+        mPendingAdded.removeRange(start, end);
+        mPendingRemoved.removeRange(start, end);
+    }
+
+    private void moveSelection(TagSelection selection, int fromPosition, int toPosition) {
+        boolean selected = selection.remove(fromPosition);
+        if (fromPosition < toPosition) {
+            selection.offset(fromPosition + 1, toPosition + 1, -1);
+        } else {
+            selection.offset(toPosition, fromPosition, 1);
+        }
+        if (selected) selection.add(toPosition);
+    }
+
+    private boolean hasStableIds() {
+        return mTagAdapter != null && mTagAdapter.hasStableIds();
+    }
+
+    private void addSelected(int position) {
+        if (mSelectedView.add(position) && hasStableIds()) {
+            long id = mTagAdapter.getItemId(position);
+            mSelectedIds.add(id);
+            mSelectedIdMap.put(position, id);
+        }
+    }
+
+    private void removeSelected(int position) {
+        if (mSelectedView.remove(position)) {
+            mSelectedIdMap.remove(position, mSelectedIds);
+        }
+    }
+
+    private void clearSelection() {
+        mSelectedView.clear();
+        mSelectedIds.clear();
+        mSelectedIdMap.clear();
+    }
+
+    /**
+     * 加入adapter预选中的位置，超出数据范围的位置忽略
+     */
+    private void addPreChecked(TagSelection preCheckedList) {
+        int count = mTagAdapter.getCount();
+        for (int i = preCheckedList.nextSetBit(0); i >= 0 && i < count; i = preCheckedList.nextSetBit(i + 1)) {
+            addSelected(i);
+        }
     }
 
     public TagAdapter getAdapter() {
@@ -211,6 +956,7 @@ public class TagFlowLayout extends FlowLayout implements TagAdapter.OnDataChange
 
 
     private static final String KEY_CHOOSE_POS = "key_choose_pos";
+    private static final String KEY_CHOOSE_ID = "key_choose_id";
     private static final String KEY_DEFAULT = "key_default";
 
 
@@ -218,15 +964,11 @@ public class TagFlowLayout extends FlowLayout implements TagAdapter.OnDataChange
     protected Parcelable onSaveInstanceState() {
         Bundle bundle = new Bundle();
         bundle.putParcelable(KEY_DEFAULT, super.onSaveInstanceState());
-
-        String selectPos = "";
-        if (mSelectedView.size() > 0) {
-            for (int key : mSelectedView) {
-                selectPos += key + "|";
-            }
-            selectPos = selectPos.substring(0, selectPos.length() - 1);
+        if (hasStableIds()) {
+            bundle.putLongArray(KEY_CHOOSE_ID, mSelectedIds.toArray());
+        } else {
+            bundle.putLongArray(KEY_CHOOSE_POS, mSelectedView.toLongArray());
         }
-        bundle.putString(KEY_CHOOSE_POS, selectPos);
         return bundle;
     }
 
@@ -234,18 +976,23 @@ public class TagFlowLayout extends FlowLayout implements TagAdapter.OnDataChange
     protected void onRestoreInstanceState(Parcelable state) {
         if (state instanceof Bundle) {
             Bundle bundle = (Bundle) state;
-            String mSelectPos = bundle.getString(KEY_CHOOSE_POS);
-            if (!TextUtils.isEmpty(mSelectPos)) {
-                String[] split = mSelectPos.split("\\|");
-                for (String pos : split) {
-                    int index = Integer.parseInt(pos);
-                    mSelectedView.add(index);
-
-                    TagView tagView = (TagView) getChildAt(index);
-                    if (tagView != null)
-                        tagView.setChecked(true);
+            long[] selectIds = bundle.getLongArray(KEY_CHOOSE_ID);
+            if (selectIds != null && hasStableIds()) {
+                for (long id : selectIds) {
+                    mSelectedIds.add(id);
+                }
+                restoreSelectionFromIds();
+            }
+            long[] selectPos = bundle.getLongArray(KEY_CHOOSE_POS);
+            if (selectPos != null) {
+                mSelectedView.addAll(TagSelection.valueOf(selectPos));
+            }
+            if (selectIds != null || selectPos != null) {
+                for (int index = mSelectedView.nextSetBit(0); index >= 0; index = mSelectedView.nextSetBit(index + 1)) {
+                    View item = getItemAt(index);
+                    if (item != null)
+                        setItemChecked(item, index, true);
                 }
-
             }
             super.onRestoreInstanceState(bundle.getParcelable(KEY_DEFAULT));
             return;
@@ -253,33 +1000,250 @@ public class TagFlowLayout extends FlowLayout implements TagAdapter.OnDataChange
         super.onRestoreInstanceState(state);
     }
 
-    private int findPosByView(View child) {
-        final int cCount = getChildCount();
-        for (int i = 0; i < cCount; i++) {
-            View v = getChildAt(i);
-            if (v == child) return i;
+    /**
+     * 查找坐标所在标签的position，使用engine的行表二分查找，不分配对象，
+     * 可以在hover、explore-by-touch等每个move事件都需要命中测试的地方调用
+     *
+     * @param x 相对于本控件的横坐标
+     * @param y 相对于本控件的纵坐标
+     * @return 标签的position，没有命中时返回-1
+     */
+    public int findPositionAt(int x, int y) {
+        FlowLayoutEngine engine = mVirtualized ? mVirtualEngine : getEngine();
+        return engine.findItemAt(x, y);
+    }
+
+    private View findChild(int x, int y) {
+        int position = findPositionAt(x, y);
+        if (position < 0) return null;
+        View v = getItemAt(position);
+        if (v == null || v.getVisibility() == View.GONE) return null;
+        return v;
+    }
+
+    @Override
+    public void onChanged() {
+        mSelectedView.clear();
+        mSelectedIdMap.clear();
+        clearPendingSelection();
+        if (hasStableIds()) {
+            restoreSelectionFromIds();
+        } else {
+            mSelectedIds.clear();
         }
-        return -1;
+        refreshTags();
     }
 
-    private TagView findChild(int x, int y) {
-        final int cCount = getChildCount();
-        for (int i = 0; i < cCount; i++) {
-            TagView v = (TagView) getChildAt(i);
-            if (v.getVisibility() == View.GONE) continue;
-            Rect outRect = new Rect();
-            v.getHitRect(outRect);
-            if (outRect.contains(x, y)) {
-                return v;
+    @Override
+    public void onSelectedListChanged() {
+        SelectionEditor editor = mPreCheckedEditor.clear();
+        TagSelection preCheckedList = mTagAdapter.getPreCheckedList();
+        for (int i = preCheckedList.nextSetBit(0); i >= 0; i = preCheckedList.nextSetBit(i + 1)) {
+            editor.select(i);
+        }
+        editor.commit();
+    }
+
+    /**
+     * 按id找回当前数据中仍然存在的选中标签，已经不存在的id一起丢弃
+     */
+    private void restoreSelectionFromIds() {
+        if (mSelectedIds.isEmpty()) return;
+        LongHashSet ids = mSelectedIds;
+        mSelectedIds = mScratchIds;
+        mScratchIds = ids;
+        TagAdapter adapter = mTagAdapter;
+        int count = adapter.getCount();
+        for (int i = 0; i < count; i++) {
+            long id = adapter.getItemId(i);
+            if (ids.contains(id)) {
+                mSelectedView.add(i);
+                mSelectedIds.add(id);
+                mSelectedIdMap.put(i, id);
             }
         }
-        return null;
+        ids.clear();
+    }
+
+    /**
+     * 局部更新之前检查是否可以只处理受影响的标签
+     *
+     * @return 需要整体刷新时返回false，此时已经刷新完毕
+     */
+    private boolean prepareItemUpdate() {
+        if (mPreMeasurePending) {
+            refreshTags();
+            return false;
+        }
+        // 虚拟化模式下未返回的预测量结果和新的position对不上，直接丢弃
+        mPreMeasureGeneration++;
+        // 已经使用的预测量结果按旧的标签计算，变化的标签需要重新测量
+        clearPrecomputedLayout();
+        return true;
     }
 
     @Override
-    public void onChanged() {
-        mSelectedView.clear();
-        changeAdapter();
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        offsetSelection(positionStart, Integer.MAX_VALUE, itemCount);
+        if (!prepareItemUpdate()) return;
+        TagAdapter adapter = mTagAdapter;
+        if (mVirtualized) {
+            // 按TagDiff的结果依次通知时adapter已经是新数据，数量和当前的标签对不上，整段平移数组
+            ensureItemSizeCapacity(Math.max(adapter.getCount(), positionStart) + itemCount);
+            int moved = mItemWidth.length - positionStart - itemCount;
+            System.arraycopy(mItemWidth, positionStart, mItemWidth, positionStart + itemCount, moved);
+            System.arraycopy(mItemHeight, positionStart, mItemHeight, positionStart + itemCount, moved);
+            System.arraycopy(mItemMargins, positionStart * 4, mItemMargins, (positionStart + itemCount) * 4, moved * 4);
+            Arrays.fill(mItemWidth, positionStart, positionStart + itemCount, -1);
+            offsetAttachedViews(positionStart, Integer.MAX_VALUE, itemCount);
+        }
+        for (int i = positionStart; i < positionStart + itemCount; i++) {
+            if (adapter.setSelected(i, adapter.getItem(i))) {
+                addSelected(i);
+            }
+            if (mVirtualized) continue;
+            View item = obtainItem(i);
+            setItemChecked(item, i, mSelectedView.contains(i));
+            addView(item, i);
+        }
+        onItemsUpdated(positionStart + itemCount);
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        removeSelectionRange(positionStart, positionStart + itemCount);
+        offsetSelection(positionStart + itemCount, Integer.MAX_VALUE, -itemCount);
+        if (!prepareItemUpdate()) return;
+        if (mVirtualized) {
+            recycleAttachedViews(positionStart, positionStart + itemCount);
+            int moved = Math.max(0, mItemWidth.length - positionStart - itemCount);
+            System.arraycopy(mItemWidth, positionStart + itemCount, mItemWidth, positionStart, moved);
+            System.arraycopy(mItemHeight, positionStart + itemCount, mItemHeight, positionStart, moved);
+            System.arraycopy(mItemMargins, (positionStart + itemCount) * 4, mItemMargins, positionStart * 4, moved * 4);
+            offsetAttachedViews(positionStart + itemCount, Integer.MAX_VALUE, -itemCount);
+        } else {
+            for (int i = positionStart + itemCount - 1; i >= positionStart; i--) {
+                View item = getChildAt(i);
+                removeViewAt(i);
+                recycleItem(item);
+            }
+        }
+        onItemsUpdated(positionStart);
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        if (!prepareItemUpdate()) return;
+        if (mVirtualized) {
+            // 重新绑定时会重新测量
+            recycleAttachedViews(positionStart, positionStart + itemCount);
+            Arrays.fill(mItemWidth, positionStart, positionStart + itemCount, -1);
+            onItemsUpdated(Integer.MAX_VALUE);
+            return;
+        }
+        for (int i = positionStart; i < positionStart + itemCount; i++) {
+            View old = getChildAt(i);
+            View item = bindItem(old, i);
+            if (item != old) {
+                removeViewAt(i);
+                recycleItem(old);
+                addView(item, i);
+            }
+            // 重新绑定可能改变了直接模式下标签View的选中效果
+            setItemChecked(item, i, mSelectedView.contains(i));
+        }
+    }
+
+    @Override
+    public void onItemMoved(int fromPosition, int toPosition) {
+        moveSelection(mSelectedView, fromPosition, toPosition);
+        mSelectedIdMap.move(fromPosition, toPosition);
+        moveSelection(mPendingAdded, fromPosition, toPosition);
+        moveSelection(mPendingRemoved, fromPosition, toPosition);
+        if (!prepareItemUpdate()) return;
+        if (mVirtualized) {
+            recycleAttachedViews(fromPosition, fromPosition + 1);
+            int width = mItemWidth[fromPosition];
+            int height = mItemHeight[fromPosition];
+            int[] margins = Arrays.copyOfRange(mItemMargins, fromPosition * 4, fromPosition * 4 + 4);
+            int low = Math.min(fromPosition, toPosition);
+            int high = Math.max(fromPosition, toPosition);
+            int dst = fromPosition < toPosition ? low : low + 1;
+            int src = fromPosition < toPosition ? low + 1 : low;
+            System.arraycopy(mItemWidth, src, mItemWidth, dst, high - low);
+            System.arraycopy(mItemHeight, src, mItemHeight, dst, high - low);
+            System.arraycopy(mItemMargins, src * 4, mItemMargins, dst * 4, (high - low) * 4);
+            mItemWidth[toPosition] = width;
+            mItemHeight[toPosition] = height;
+            System.arraycopy(margins, 0, mItemMargins, toPosition * 4, 4);
+            if (fromPosition < toPosition) {
+                offsetAttachedViews(fromPosition + 1, toPosition + 1, -1);
+            } else {
+                offsetAttachedViews(toPosition, fromPosition, 1);
+            }
+        } else {
+            View view = getChildAt(fromPosition);
+            removeViewAt(fromPosition);
+            addView(view, toPosition);
+        }
+        onItemsUpdated(Math.min(fromPosition, toPosition));
+    }
+
+    /**
+     * 局部更新之后，从position开始重新编号，并从第一个变化的行开始重新布局
+     */
+    private void onItemsUpdated(int position) {
+        if (mVirtualized) {
+            mFirstAttached = -1;
+            mLastAttached = -1;
+        } else {
+            int cCount = getChildCount();
+            for (int i = position; i < cCount; i++) {
+                ((LayoutParams) getChildAt(i).getLayoutParams()).mPosition = i;
+            }
+        }
+        requestLayout();
+    }
+
+    private void ensureItemSizeCapacity(int count) {
+        if (mItemWidth.length < count) {
+            int size = Math.max(count, mItemWidth.length * 2);
+            mItemWidth = Arrays.copyOf(mItemWidth, size);
+            mItemHeight = Arrays.copyOf(mItemHeight, size);
+            mItemMargins = Arrays.copyOf(mItemMargins, size * 4);
+        }
+    }
+
+    /**
+     * 虚拟化模式下回收[start, end)之间已绑定的标签
+     */
+    private void recycleAttachedViews(int start, int end) {
+        for (int i = mAttachedViews.size() - 1; i >= 0; i--) {
+            int position = mAttachedViews.keyAt(i);
+            if (position >= start && position < end) {
+                View view = mAttachedViews.valueAt(i);
+                mAttachedViews.removeAt(i);
+                removeViewInLayout(view);
+                recycleItem(view);
+            }
+        }
+    }
+
+    /**
+     * 虚拟化模式下把[start, end)之间已绑定的标签的position平移delta
+     */
+    private void offsetAttachedViews(int start, int end, int delta) {
+        SparseArray<View> offset = new SparseArray<>(mAttachedViews.size());
+        for (int i = 0; i < mAttachedViews.size(); i++) {
+            int position = mAttachedViews.keyAt(i);
+            View view = mAttachedViews.valueAt(i);
+            if (position >= start && position < end) {
+                position += delta;
+                ((LayoutParams) view.getLayoutParams()).mPosition = position;
+            }
+            offset.put(position, view);
+        }
+        mAttachedViews = offset;
     }
 
     public static int dip2px(Context context, float dpValue) {
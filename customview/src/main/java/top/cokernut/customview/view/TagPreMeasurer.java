@@ -0,0 +1,114 @@
+package top.cokernut.customview.view;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * 纯文字标签的预测量
+ * 在后台线程用Paint/StaticLayout计算每个标签的大小并完成换行，结果交回主线程，
+ * 主线程只需要创建View并按已知的位置摆放。
+ * 单行文字的宽度和行高从TagTextMeasureCache中取得，同样的文字只测量一次。
+ */
+public class TagPreMeasurer {
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    public interface Callback {
+        /**
+         * 在主线程回调
+         *
+         * @param engine     已经完成换行的engine
+         * @param generation 发起测量时传入的版本号，用来丢弃过期的结果
+         */
+        void onPreMeasured(FlowLayoutEngine engine, int generation);
+    }
+
+    private TagPreMeasurer() {
+    }
+
+    /**
+     * 在后台线程测量，完成后在主线程回调
+     */
+    public static void measureAsync(CharSequence[] texts, TagTextStyle style,
+                                    int availableWidth, int generation, Callback callback) {
+        measureAsync(texts, style, availableWidth, new FlowLayoutEngine(), generation, callback);
+    }
+
+    /**
+     * 在后台线程测量，完成后在主线程回调
+     *
+     * @param engine 已经设置好间距、最大行数的engine，测量期间不能在其他线程使用
+     */
+    public static void measureAsync(final CharSequence[] texts, final TagTextStyle style, final int availableWidth,
+                                    final FlowLayoutEngine engine, final int generation, final Callback callback) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                measure(texts, style, availableWidth, engine);
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onPreMeasured(engine, generation);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 同步测量，可以在任意线程调用
+     *
+     * @param texts          标签文字
+     * @param style          标签样式
+     * @param availableWidth 每一行可用的宽度
+     * @return 已经完成换行的engine，item大小不含margin
+     */
+    public static FlowLayoutEngine measure(CharSequence[] texts, TagTextStyle style, int availableWidth) {
+        return measure(texts, style, availableWidth, new FlowLayoutEngine());
+    }
+
+    /**
+     * 同步测量，结果写入engine，可以在任意线程调用
+     *
+     * @return 传入的engine
+     */
+    public static FlowLayoutEngine measure(CharSequence[] texts, TagTextStyle style, int availableWidth,
+                                           FlowLayoutEngine engine) {
+        TextPaint paint = style.createPaint();
+        boolean includePad = style.isIncludeFontPadding();
+        int horizontal = style.getPaddingLeft() + style.getPaddingRight();
+        int vertical = style.getPaddingTop() + style.getPaddingBottom();
+        // 文字最多能占用的宽度，超过时折行
+        int maxTextWidth = Math.max(0, availableWidth - horizontal - style.getMarginLeft() - style.getMarginRight());
+        engine.setItemCount(texts.length);
+        TagTextMeasureCache cache = TagTextMeasureCache.getDefault();
+        for (int i = 0; i < texts.length; i++) {
+            CharSequence text = texts[i];
+            int textWidth;
+            int textHeight;
+            TagTextMeasureCache.Measurement measurement = cache.measure(text, paint);
+            if (measurement.isBoring() && measurement.getWidth() <= maxTextWidth) {
+                textWidth = measurement.getWidth();
+                textHeight = measurement.getLineHeight(includePad);
+            } else {
+                StaticLayout layout = new StaticLayout(text, paint, Math.min(measurement.getWidth(), maxTextWidth),
+                        Layout.Alignment.ALIGN_NORMAL, 1f, 0f, includePad);
+                textWidth = 0;
+                for (int line = 0; line < layout.getLineCount(); line++) {
+                    textWidth = Math.max(textWidth, (int) Math.ceil(layout.getLineWidth(line)));
+                }
+                textHeight = layout.getHeight();
+            }
+            engine.setItem(i, textWidth + horizontal, textHeight + vertical,
+                    style.getMarginLeft(), style.getMarginTop(), style.getMarginRight(), style.getMarginBottom());
+        }
+        engine.breakLines(availableWidth);
+        return engine;
+    }
+}
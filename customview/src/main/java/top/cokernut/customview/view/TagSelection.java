@@ -0,0 +1,307 @@
+package top.cokernut.customview.view;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 标签选中状态，按position保存在bitset中，增删查都不需要装箱
+ * snapshot()返回不可修改的快照，快照和当前集合共用同一个数组，直到下一次修改时才复制（copy-on-write）
+ */
+public class TagSelection {
+    private static final long[] EMPTY_WORDS = new long[0];
+
+    private long[] mWords = EMPTY_WORDS;
+    private int mSize;
+    /**
+     * mWords被快照引用，修改之前需要先复制
+     */
+    private boolean mShared;
+    /**
+     * 没有修改时重复调用snapshot()返回同一个快照
+     */
+    private Snapshot mSnapshot;
+
+    public TagSelection() {
+    }
+
+    /**
+     * 从toLongArray()的结果恢复
+     */
+    public static TagSelection valueOf(long[] words) {
+        TagSelection selection = new TagSelection();
+        if (words != null && words.length > 0) {
+            selection.mWords = Arrays.copyOf(words, words.length);
+            selection.mSize = bitCount(selection.mWords);
+        }
+        return selection;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public boolean contains(int position) {
+        return contains(mWords, position);
+    }
+
+    /**
+     * @return 之前没有选中时返回true
+     */
+    public boolean add(int position) {
+        if (position < 0 || contains(position)) return false;
+        ensureWritable((position >> 6) + 1);
+        mWords[position >> 6] |= 1L << position;
+        mSize++;
+        return true;
+    }
+
+    /**
+     * @return 之前是选中的时返回true
+     */
+    public boolean remove(int position) {
+        if (!contains(position)) return false;
+        ensureWritable(0);
+        mWords[position >> 6] &= ~(1L << position);
+        mSize--;
+        return true;
+    }
+
+    public void addAll(TagSelection other) {
+        if (other.mSize == 0) return;
+        long[] words = other.mWords;
+        ensureWritable(words.length);
+        for (int i = 0; i < words.length; i++) {
+            mWords[i] |= words[i];
+        }
+        mSize = bitCount(mWords);
+    }
+
+    /**
+     * 清除[start, end)之间的选中位置
+     */
+    public void removeRange(int start, int end) {
+        for (int i = nextSetBit(start); i >= 0 && i < end; i = nextSetBit(i + 1)) {
+            remove(i);
+        }
+    }
+
+    /**
+     * 把[start, end)之间的选中位置平移delta，用于标签的插入、移除和移动
+     * 平移的目标位置需要是空的，比如移除标签时先调用removeRange
+     */
+    public void offset(int start, int end, int delta) {
+        if (delta == 0 || mSize == 0) return;
+        ensureWritable(0);
+        if (delta > 0) {
+            // 从后往前移动，不会覆盖还没有移动的位置
+            int last = (int) Math.min((long) end - 1, (long) mWords.length * 64 - 1);
+            for (int i = prevSetBit(last); i >= start; i = prevSetBit(i - 1)) {
+                mWords[i >> 6] &= ~(1L << i);
+                int target = i + delta;
+                ensureWritable((target >> 6) + 1);
+                mWords[target >> 6] |= 1L << target;
+            }
+        } else {
+            for (int i = nextSetBit(start); i >= 0 && i < end; i = nextSetBit(i + 1)) {
+                mWords[i >> 6] &= ~(1L << i);
+                int target = i + delta;
+                if (target >= 0) {
+                    mWords[target >> 6] |= 1L << target;
+                } else {
+                    mSize--;
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        if (mSize == 0) return;
+        if (mShared) {
+            mWords = EMPTY_WORDS;
+            mShared = false;
+        } else {
+            Arrays.fill(mWords, 0);
+        }
+        mSize = 0;
+        mSnapshot = null;
+    }
+
+    /**
+     * @return from之后（包含from）第一个选中的位置，没有时返回-1
+     */
+    public int nextSetBit(int from) {
+        return nextSetBit(mWords, from);
+    }
+
+    /**
+     * @return from之前（包含from）最后一个选中的位置，没有时返回-1
+     */
+    public int prevSetBit(int from) {
+        if (from < 0) return -1;
+        int w = from >> 6;
+        if (w >= mWords.length) {
+            w = mWords.length - 1;
+            from = w * 64 + 63;
+        }
+        if (w < 0) return -1;
+        long word = mWords[w] & (-1L >>> (63 - (from & 63)));
+        while (true) {
+            if (word != 0) {
+                return w * 64 + 63 - Long.numberOfLeadingZeros(word);
+            }
+            if (--w < 0) return -1;
+            word = mWords[w];
+        }
+    }
+
+    /**
+     * @return 按从小到大排列的选中位置
+     */
+    public int[] toIntArray() {
+        return toIntArray(mWords, mSize);
+    }
+
+    /**
+     * @return 可以保存到Bundle中的紧凑数组，末尾没有选中位置的word会被去掉
+     */
+    public long[] toLongArray() {
+        int length = mWords.length;
+        while (length > 0 && mWords[length - 1] == 0) {
+            length--;
+        }
+        return Arrays.copyOf(mWords, length);
+    }
+
+    /**
+     * 当前选中状态的不可修改快照，之后对本集合的修改不会影响快照
+     */
+    public Snapshot snapshot() {
+        if (mSnapshot == null) {
+            mSnapshot = new Snapshot(mWords, mSize);
+            mShared = true;
+        }
+        return mSnapshot;
+    }
+
+    /**
+     * 修改之前调用：数组被快照共用时先复制，长度不够minWords时扩容
+     */
+    private void ensureWritable(int minWords) {
+        mSnapshot = null;
+        if (mShared || mWords.length < minWords) {
+            int length = mWords.length;
+            if (length < minWords) {
+                length = Math.max(minWords, length * 2);
+            }
+            mWords = Arrays.copyOf(mWords, length);
+            mShared = false;
+        }
+    }
+
+    private static boolean contains(long[] words, int position) {
+        if (position < 0) return false;
+        int w = position >> 6;
+        return w < words.length && (words[w] & (1L << position)) != 0;
+    }
+
+    private static int nextSetBit(long[] words, int from) {
+        if (from < 0) from = 0;
+        int w = from >> 6;
+        if (w >= words.length) return -1;
+        long word = words[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return w * 64 + Long.numberOfTrailingZeros(word);
+            }
+            if (++w >= words.length) return -1;
+            word = words[w];
+        }
+    }
+
+    private static int[] toIntArray(long[] words, int size) {
+        int[] result = new int[size];
+        int index = 0;
+        for (int i = nextSetBit(words, 0); i >= 0; i = nextSetBit(words, i + 1)) {
+            result[index++] = i;
+        }
+        return result;
+    }
+
+    private static int bitCount(long[] words) {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * 选中状态的不可修改快照，可以当作Set<Integer>使用，
+     * 也可以用contains(int)、nextSetBit(int)直接查询，避免装箱
+     */
+    public static final class Snapshot extends AbstractSet<Integer> {
+        private final long[] mWords;
+        private final int mSize;
+
+        private Snapshot(long[] words, int size) {
+            mWords = words;
+            mSize = size;
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Integer && contains((int) (Integer) o);
+        }
+
+        public boolean contains(int position) {
+            return TagSelection.contains(mWords, position);
+        }
+
+        /**
+         * @return from之后（包含from）第一个选中的位置，没有时返回-1
+         */
+        public int nextSetBit(int from) {
+            return TagSelection.nextSetBit(mWords, from);
+        }
+
+        public int[] toIntArray() {
+            return TagSelection.toIntArray(mWords, mSize);
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new Iterator<Integer>() {
+                private int mNext = nextSetBit(0);
+
+                @Override
+                public boolean hasNext() {
+                    return mNext >= 0;
+                }
+
+                @Override
+                public Integer next() {
+                    if (mNext < 0) throw new NoSuchElementException();
+                    int current = mNext;
+                    mNext = nextSetBit(current + 1);
+                    return current;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package top.cokernut.customview.view;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.text.BoringLayout;
+import android.text.Layout;
+import android.text.Spanned;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+/**
+ * 进程内共用的标签文字测量缓存，按(文字, 字号, 字体, 字间距)保存文字宽度和行高度量，LRU淘汰
+ * 同样的标签文字出现在多个TagFlowLayout、TextTagFlowView中时只测量一次。
+ * 带样式的文字（Spanned）宽度和样式有关，不缓存。可以在任意线程使用
+ */
+public class TagTextMeasureCache {
+    private static final int DEFAULT_MAX_SIZE = 256 * 1024;
+    /**
+     * 每个缓存项除了文字以外大约占用的字节数
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private static TagTextMeasureCache sDefault;
+
+    private final LruCache<Key, Measurement> mCache;
+
+    /**
+     * @param maxSize 缓存占用内存的上限，单位字节，按文字长度估算
+     */
+    public TagTextMeasureCache(int maxSize) {
+        mCache = new LruCache<Key, Measurement>(maxSize) {
+            @Override
+            protected int sizeOf(Key key, Measurement value) {
+                return key.text.length() * 2 + ENTRY_OVERHEAD;
+            }
+        };
+    }
+
+    /**
+     * @return 进程内共用的缓存，默认上限256KB
+     */
+    public static synchronized TagTextMeasureCache getDefault() {
+        if (sDefault == null) {
+            sDefault = new TagTextMeasureCache(DEFAULT_MAX_SIZE);
+        }
+        return sDefault;
+    }
+
+    /**
+     * 一段文字的测量结果，不可修改
+     */
+    public static final class Measurement {
+        private final int mWidth;
+        private final boolean mBoring;
+        private final int mTop;
+        private final int mAscent;
+        private final int mDescent;
+        private final int mBottom;
+
+        Measurement(int width, boolean boring, int top, int ascent, int descent, int bottom) {
+            mWidth = width;
+            mBoring = boring;
+            mTop = top;
+            mAscent = ascent;
+            mDescent = descent;
+            mBottom = bottom;
+        }
+
+        /**
+         * @return 不折行时文字的宽度，已向上取整
+         */
+        public int getWidth() {
+            return mWidth;
+        }
+
+        /**
+         * @return 是否是可以用BoringLayout显示的单行文字（没有换行符、没有从右到左的字符）
+         */
+        public boolean isBoring() {
+            return mBoring;
+        }
+
+        public int getTop() {
+            return mTop;
+        }
+
+        public int getAscent() {
+            return mAscent;
+        }
+
+        public int getDescent() {
+            return mDescent;
+        }
+
+        public int getBottom() {
+            return mBottom;
+        }
+
+        /**
+         * @return 单行文字的高度，和TextView的includeFontPadding一致
+         */
+        public int getLineHeight(boolean includeFontPadding) {
+            return includeFontPadding ? mBottom - mTop : mDescent - mAscent;
+        }
+    }
+
+    /**
+     * 测量文字，缓存中有时直接返回
+     *
+     * @param paint 测量用的画笔，除字号、字体、字间距以外的属性需要和缓存中其他调用保持一致
+     */
+    public Measurement measure(CharSequence text, TextPaint paint) {
+        if (text instanceof Spanned) {
+            return doMeasure(text, paint);
+        }
+        Key key = new Key(text.toString(), paint.getTextSize(), paint.getTypeface(), getLetterSpacing(paint));
+        Measurement measurement = mCache.get(key);
+        if (measurement == null) {
+            // 多个线程同时未命中时会重复测量，结果相同，后放入的覆盖先放入的
+            measurement = doMeasure(text, paint);
+            mCache.put(key, measurement);
+        }
+        return measurement;
+    }
+
+    private static Measurement doMeasure(CharSequence text, TextPaint paint) {
+        BoringLayout.Metrics metrics = BoringLayout.isBoring(text, paint);
+        if (metrics != null) {
+            return new Measurement(metrics.width, true, metrics.top, metrics.ascent, metrics.descent, metrics.bottom);
+        }
+        Paint.FontMetricsInt fm = paint.getFontMetricsInt();
+        return new Measurement((int) Math.ceil(Layout.getDesiredWidth(text, paint)), false,
+                fm.top, fm.ascent, fm.descent, fm.bottom);
+    }
+
+    private static float getLetterSpacing(TextPaint paint) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? paint.getLetterSpacing() : 0f;
+    }
+
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    public int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    public int getMissCount() {
+        return mCache.missCount();
+    }
+
+    /**
+     * @return 因为超过内存上限被淘汰的缓存项数量
+     */
+    public int getEvictionCount() {
+        return mCache.evictionCount();
+    }
+
+    /**
+     * @return 当前缓存占用的内存，单位字节（估算）
+     */
+    public int getSize() {
+        return mCache.size();
+    }
+
+    public int getMaxSize() {
+        return mCache.maxSize();
+    }
+
+    private static final class Key {
+        final String text;
+        final float textSize;
+        final Typeface typeface;
+        final float letterSpacing;
+
+        Key(String text, float textSize, Typeface typeface, float letterSpacing) {
+            this.text = text;
+            this.textSize = textSize;
+            this.typeface = typeface;
+            this.letterSpacing = letterSpacing;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return textSize == key.textSize
+                    && letterSpacing == key.letterSpacing
+                    && text.equals(key.text)
+                    && (typeface == null ? key.typeface == null : typeface.equals(key.typeface));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = text.hashCode();
+            result = 31 * result + Float.floatToIntBits(textSize);
+            result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+            result = 31 * result + Float.floatToIntBits(letterSpacing);
+            return result;
+        }
+    }
+}
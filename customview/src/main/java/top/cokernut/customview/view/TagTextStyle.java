@@ -0,0 +1,162 @@
+package top.cokernut.customview.view;
+
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.text.TextPaint;
+
+/**
+ * 纯文字标签的样式，描述TagAdapter创建的文字标签的字号、字体、padding和margin
+ * 预测量时按这里的参数计算标签大小，所以必须和adapter实际创建的View保持一致
+ */
+public class TagTextStyle {
+    private float mTextSize; // 字号，单位px
+    private Typeface mTypeface = Typeface.DEFAULT;
+    private float mLetterSpacing; // 字间距，单位em，API 21以上有效
+    private boolean mIncludeFontPadding = true;
+    private int mPaddingLeft;
+    private int mPaddingTop;
+    private int mPaddingRight;
+    private int mPaddingBottom;
+    private int mMarginLeft;
+    private int mMarginTop;
+    private int mMarginRight;
+    private int mMarginBottom;
+    /**
+     * TextTagFlowView绘制时使用的文字颜色和背景，预测量不需要
+     */
+    private ColorStateList mTextColor = ColorStateList.valueOf(Color.BLACK);
+    private Drawable mBackground;
+
+    /**
+     * @param textSize 字号，单位px
+     */
+    public TagTextStyle(float textSize) {
+        mTextSize = textSize;
+    }
+
+    /**
+     * 创建测量用的画笔，每个线程应该使用自己的画笔
+     */
+    public TextPaint createPaint() {
+        TextPaint paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(mTextSize);
+        paint.setTypeface(mTypeface);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            paint.setLetterSpacing(mLetterSpacing);
+        }
+        return paint;
+    }
+
+    public float getTextSize() {
+        return mTextSize;
+    }
+
+    public void setTextSize(float textSize) {
+        mTextSize = textSize;
+    }
+
+    public Typeface getTypeface() {
+        return mTypeface;
+    }
+
+    public void setTypeface(Typeface typeface) {
+        mTypeface = typeface;
+    }
+
+    public float getLetterSpacing() {
+        return mLetterSpacing;
+    }
+
+    /**
+     * 和TextView.setLetterSpacing保持一致，单位em，API 21以下忽略
+     */
+    public void setLetterSpacing(float letterSpacing) {
+        mLetterSpacing = letterSpacing;
+    }
+
+    public boolean isIncludeFontPadding() {
+        return mIncludeFontPadding;
+    }
+
+    /**
+     * 和TextView.setIncludeFontPadding保持一致，默认为true
+     */
+    public void setIncludeFontPadding(boolean includeFontPadding) {
+        mIncludeFontPadding = includeFontPadding;
+    }
+
+    public void setPadding(int left, int top, int right, int bottom) {
+        mPaddingLeft = left;
+        mPaddingTop = top;
+        mPaddingRight = right;
+        mPaddingBottom = bottom;
+    }
+
+    public void setMargins(int left, int top, int right, int bottom) {
+        mMarginLeft = left;
+        mMarginTop = top;
+        mMarginRight = right;
+        mMarginBottom = bottom;
+    }
+
+    public int getPaddingLeft() {
+        return mPaddingLeft;
+    }
+
+    public int getPaddingTop() {
+        return mPaddingTop;
+    }
+
+    public int getPaddingRight() {
+        return mPaddingRight;
+    }
+
+    public int getPaddingBottom() {
+        return mPaddingBottom;
+    }
+
+    public int getMarginLeft() {
+        return mMarginLeft;
+    }
+
+    public int getMarginTop() {
+        return mMarginTop;
+    }
+
+    public int getMarginRight() {
+        return mMarginRight;
+    }
+
+    public int getMarginBottom() {
+        return mMarginBottom;
+    }
+
+    public ColorStateList getTextColor() {
+        return mTextColor;
+    }
+
+    /**
+     * 文字颜色，可以按state_checked、state_pressed区分选中和按下的颜色
+     */
+    public void setTextColor(ColorStateList textColor) {
+        mTextColor = textColor;
+    }
+
+    public void setTextColor(int color) {
+        mTextColor = ColorStateList.valueOf(color);
+    }
+
+    public Drawable getBackground() {
+        return mBackground;
+    }
+
+    /**
+     * 标签背景，可以是按state_checked、state_pressed区分的selector，为null时不绘制背景
+     */
+    public void setBackground(Drawable background) {
+        mBackground = background;
+    }
+}
@@ -0,0 +1,138 @@
+package top.cokernut.customview.view;
+
+import android.util.SparseArray;
+import android.view.View;
+import android.widget.Checkable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * 标签回收池，按adapter的类型和view type分组保存移出屏幕或被移除的标签，参考RecyclerView.RecycledViewPool
+ * 保存的可以是TagView容器，也可以是直接模式下的标签View
+ * 同一个界面上的多个TagFlowLayout可以共用一个回收池，不同adapter类型创建的标签不会互相复用，只能在主线程使用
+ */
+public class TagViewPool {
+    private static final int DEFAULT_MAX_SCRAP = 32;
+
+    private final HashMap<Class<?>, SparseArray<ArrayList<View>>> mScrap = new HashMap<>();
+    private int mMaxScrap = DEFAULT_MAX_SCRAP;
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * 取出一个回收的标签，不区分adapter的类型
+     *
+     * @return 没有可用的标签时返回null
+     */
+    public View get(int viewType) {
+        return get(null, viewType);
+    }
+
+    /**
+     * 取出一个adapterClass创建的回收的标签
+     *
+     * @return 没有可用的标签时返回null
+     */
+    public View get(Class<?> adapterClass, int viewType) {
+        SparseArray<ArrayList<View>> scrapByType = mScrap.get(adapterClass);
+        ArrayList<View> scrap = scrapByType == null ? null : scrapByType.get(viewType);
+        if (scrap == null || scrap.isEmpty()) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return scrap.remove(scrap.size() - 1);
+    }
+
+    /**
+     * 回收一个已经从父View中移除的标签，不区分adapter的类型，超过数量上限时直接丢弃
+     */
+    public void put(int viewType, View view) {
+        put(null, viewType, view);
+    }
+
+    /**
+     * 回收一个adapterClass创建、已经从父View中移除的标签，超过数量上限时直接丢弃
+     */
+    public void put(Class<?> adapterClass, int viewType, View view) {
+        SparseArray<ArrayList<View>> scrapByType = mScrap.get(adapterClass);
+        if (scrapByType == null) {
+            scrapByType = new SparseArray<>();
+            mScrap.put(adapterClass, scrapByType);
+        }
+        ArrayList<View> scrap = scrapByType.get(viewType);
+        if (scrap == null) {
+            scrap = new ArrayList<>();
+            scrapByType.put(viewType, scrap);
+        }
+        if (scrap.size() < mMaxScrap) {
+            if (view.getLayoutParams() instanceof FlowLayout.LayoutParams) {
+                ((FlowLayout.LayoutParams) view.getLayoutParams()).mPosition = -1;
+            }
+            if (view instanceof Checkable) {
+                ((Checkable) view).setChecked(false);
+            }
+            scrap.add(view);
+        }
+    }
+
+    /**
+     * 取出的标签不能使用、被丢弃时调用，这次按未命中统计
+     */
+    void onRejected() {
+        mHitCount--;
+        mMissCount++;
+    }
+
+    /**
+     * 设置每种view type最多保存的数量
+     */
+    public void setMaxScrap(int maxScrap) {
+        mMaxScrap = maxScrap;
+        for (SparseArray<ArrayList<View>> scrapByType : mScrap.values()) {
+            for (int i = 0; i < scrapByType.size(); i++) {
+                ArrayList<View> scrap = scrapByType.valueAt(i);
+                while (scrap.size() > maxScrap) {
+                    scrap.remove(scrap.size() - 1);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        mScrap.clear();
+    }
+
+    /**
+     * @return 从回收池取到标签的次数
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return 回收池为空或取出的标签不能使用、需要新建标签的次数
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return 回收池中当前保存的标签数量
+     */
+    public int getScrapCount() {
+        int count = 0;
+        for (SparseArray<ArrayList<View>> scrapByType : mScrap.values()) {
+            for (int i = 0; i < scrapByType.size(); i++) {
+                count += scrapByType.valueAt(i).size();
+            }
+        }
+        return count;
+    }
+
+    public void resetStats() {
+        mHitCount = 0;
+        mMissCount = 0;
+    }
+}
@@ -0,0 +1,628 @@
+package top.cokernut.customview.view;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.support.v4.widget.ExploreByTouchHelper;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.accessibility.AccessibilityEvent;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import top.cokernut.customview.R;
+
+/**
+ * 纯文字标签的轻量实现：所有标签画在同一个View上，不为每个标签创建TextView和TagView
+ * adapter通过getText提供标签文字，通过getItemViewType选择setTagStyle注册的样式；
+ * 文字宽度从TagTextMeasureCache取得并按position缓存，只有超过一行宽度的标签才创建StaticLayout，
+ * onDraw只绘制和裁剪区域相交的行。点击、选中和无障碍（ExploreByTouchHelper虚拟节点）都按position处理
+ */
+public class TextTagFlowView extends View implements TagAdapter.OnDataChangedListener {
+    private static final int[] STATE_NORMAL = new int[]{android.R.attr.state_enabled};
+    private static final int[] STATE_PRESSED = new int[]{android.R.attr.state_enabled, android.R.attr.state_pressed};
+    private static final int[] STATE_CHECKED = new int[]{android.R.attr.state_enabled, android.R.attr.state_checked};
+    private static final int[] STATE_CHECKED_PRESSED = new int[]{android.R.attr.state_enabled,
+            android.R.attr.state_checked, android.R.attr.state_pressed};
+
+    private final FlowLayoutEngine mEngine = new FlowLayoutEngine();
+    private final SparseArray<ChipStyle> mStyles = new SparseArray<>();
+    private TagAdapter mTagAdapter;
+    private int mGravity;
+    private int mAlignItems;
+    private boolean mAutoSelectEffect = true;
+    private int mSelectedMax = -1;//-1为不限制数量
+    private final TagSelection mSelectedView = new TagSelection();
+
+    /**
+     * 按position保存的标签数据：文字、样式和不限宽度时的文字宽度（-1表示还没有测量）
+     */
+    private CharSequence[] mTexts = new CharSequence[0];
+    private int[] mStyleIds = new int[0];
+    private int[] mTextWidths = new int[0];
+    private int mCount;
+    /**
+     * 超过一行宽度、需要折行的标签，只有这些标签才创建StaticLayout
+     */
+    private final SparseArray<StaticLayout> mLayouts = new SparseArray<>();
+    private boolean mItemsDirty = true;
+    private int mMeasuredAvailableWidth = -1;
+
+    private int mPressedPosition = -1;
+    private int mClickPosition = -1;
+    private final Rect mTempRect = new Rect();
+    private final ChipAccessibilityHelper mAccessibilityHelper;
+
+    public TextTagFlowView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.FlowLayout);
+        mGravity = ta.getInt(R.styleable.FlowLayout_gravity, FlowLayoutEngine.LEFT);
+        mAlignItems = ta.getInt(R.styleable.FlowLayout_flow_align_items, FlowLayoutEngine.ALIGN_TOP);
+        mEngine.setSpacing(ta.getDimensionPixelSize(R.styleable.FlowLayout_flow_horizontal_spacing, 0),
+                ta.getDimensionPixelSize(R.styleable.FlowLayout_flow_vertical_spacing, 0));
+        mEngine.setMaxLines(ta.getInt(R.styleable.FlowLayout_flow_max_lines, 0));
+        ta.recycle();
+        ta = context.obtainStyledAttributes(attrs, R.styleable.TagFlowLayout);
+        mAutoSelectEffect = ta.getBoolean(R.styleable.TagFlowLayout_auto_select_effect, true);
+        mSelectedMax = ta.getInt(R.styleable.TagFlowLayout_max_select, -1);
+        ta.recycle();
+
+        setClickable(true);
+        mAccessibilityHelper = new ChipAccessibilityHelper(this);
+        ViewCompat.setAccessibilityDelegate(this, mAccessibilityHelper);
+    }
+
+    public TextTagFlowView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public TextTagFlowView(Context context) {
+        this(context, null);
+    }
+
+    /**
+     * 一种标签样式绘制时需要的画笔和文字位置，每个View各自创建，不和其他View共用
+     */
+    private static final class ChipStyle {
+        final TagTextStyle style;
+        final TextPaint paint;
+        /**
+         * 单行文字的高度，以及baseline到文字顶部的距离，和TextView的includeFontPadding一致
+         */
+        final int lineHeight;
+        final int baseline;
+
+        ChipStyle(TagTextStyle style) {
+            this.style = style;
+            paint = style.createPaint();
+            // 和TagTextMeasureCache.Measurement.getLineHeight一致
+            Paint.FontMetricsInt fm = paint.getFontMetricsInt();
+            if (style.isIncludeFontPadding()) {
+                lineHeight = fm.bottom - fm.top;
+                baseline = -fm.top;
+            } else {
+                lineHeight = fm.descent - fm.ascent;
+                baseline = -fm.ascent;
+            }
+        }
+    }
+
+    /**
+     * 注册标签样式，adapter的getItemViewType返回styleId的标签使用这个样式
+     */
+    public void setTagStyle(int styleId, TagTextStyle style) {
+        mStyles.put(styleId, new ChipStyle(style));
+        invalidateItems();
+    }
+
+    /**
+     * 设置默认样式，getItemViewType没有对应样式的标签都使用这个样式
+     */
+    public void setTagStyle(TagTextStyle style) {
+        setTagStyle(0, style);
+    }
+
+    private ChipStyle getStyle(int styleId) {
+        ChipStyle style = mStyles.get(styleId);
+        if (style == null) {
+            style = mStyles.get(0);
+            if (style == null) {
+                throw new IllegalStateException("no TagTextStyle for style id " + styleId + ", call setTagStyle first");
+            }
+        }
+        return style;
+    }
+
+    public void setAdapter(TagAdapter adapter) {
+        mTagAdapter = adapter;
+        mTagAdapter.setOnDataChangedListener(this);
+        mSelectedView.clear();
+        loadItems();
+    }
+
+    public TagAdapter getAdapter() {
+        return mTagAdapter;
+    }
+
+    public void setGravity(int gravity) {
+        if (mGravity == gravity) return;
+        mGravity = gravity;
+        requestLayout();
+        invalidate();
+    }
+
+    public void setAlignItems(int alignItems) {
+        if (mAlignItems == alignItems) return;
+        mAlignItems = alignItems;
+        requestLayout();
+        invalidate();
+    }
+
+    public void setSpacing(int horizontalSpacing, int verticalSpacing) {
+        mEngine.setSpacing(horizontalSpacing, verticalSpacing);
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * @param maxLines 最多显示的行数，小于等于0表示不限制
+     */
+    public void setMaxLines(int maxLines) {
+        mEngine.setMaxLines(maxLines);
+        requestLayout();
+        invalidate();
+    }
+
+    public void setMaxSelectCount(int count) {
+        if (mSelectedView.size() > count) {
+            mSelectedView.clear();
+            invalidate();
+        }
+        mSelectedMax = count;
+    }
+
+    /**
+     * @return 选中位置的不可修改快照
+     */
+    public TagSelection.Snapshot getSelection() {
+        return mSelectedView.snapshot();
+    }
+
+    public interface OnTagClickListener {
+        boolean onTagClick(TextTagFlowView parent, int position);
+    }
+
+    private OnTagClickListener mOnTagClickListener;
+
+    public void setOnTagClickListener(OnTagClickListener onTagClickListener) {
+        mOnTagClickListener = onTagClickListener;
+    }
+
+    private TagFlowLayout.OnSelectListener mOnSelectListener;
+
+    public void setOnSelectListener(TagFlowLayout.OnSelectListener onSelectListener) {
+        mOnSelectListener = onSelectListener;
+    }
+
+    /**
+     * 从adapter读取所有标签的文字和样式，文字宽度在下一次测量时重新计算
+     */
+    private void loadItems() {
+        TagAdapter adapter = mTagAdapter;
+        int count = adapter.getCount();
+        if (mTexts.length < count) {
+            int size = Math.max(count, mTexts.length * 2);
+            mTexts = new CharSequence[size];
+            mStyleIds = new int[size];
+            mTextWidths = new int[size];
+        }
+        for (int i = 0; i < count; i++) {
+            Object item = adapter.getItem(i);
+            CharSequence text = adapter.getText(i, item);
+            mTexts[i] = text != null ? text : String.valueOf(item);
+            mStyleIds[i] = adapter.getItemViewType(i);
+        }
+        // 不再使用的文字不要继续引用
+        Arrays.fill(mTexts, count, mCount > count ? mCount : count, null);
+        mCount = count;
+        TagSelection preCheckedList = adapter.getPreCheckedList();
+        for (int i = 0; i < count; i++) {
+            if (adapter.setSelected(i, adapter.getItem(i))) {
+                mSelectedView.add(i);
+            }
+        }
+        for (int i = preCheckedList.nextSetBit(0); i >= 0 && i < count; i = preCheckedList.nextSetBit(i + 1)) {
+            mSelectedView.add(i);
+        }
+        mSelectedView.removeRange(count, Integer.MAX_VALUE);
+        invalidateItems();
+    }
+
+    /**
+     * 文字或样式变化之后，重新测量所有标签
+     */
+    private void invalidateItems() {
+        mItemsDirty = true;
+        mPressedPosition = -1;
+        requestLayout();
+        invalidate();
+        mAccessibilityHelper.invalidateRoot();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int widthMode = MeasureSpec.getMode(widthMeasureSpec);
+        int widthSize = MeasureSpec.getSize(widthMeasureSpec);
+        int heightMode = MeasureSpec.getMode(heightMeasureSpec);
+        int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+        int availableWidth = widthMode == MeasureSpec.UNSPECIFIED
+                ? Integer.MAX_VALUE / 2 : widthSize - getPaddingLeft() - getPaddingRight();
+        if (mItemsDirty || availableWidth != mMeasuredAvailableWidth) {
+            measureItems(availableWidth);
+        }
+        mEngine.breakLines(availableWidth);
+        setMeasuredDimension(
+                widthMode == MeasureSpec.EXACTLY ? widthSize : mEngine.getContentWidth() + getPaddingLeft() + getPaddingRight(),
+                heightMode == MeasureSpec.EXACTLY ? heightSize : mEngine.getContentHeight() + getPaddingTop() + getPaddingBottom()
+        );
+    }
+
+    /**
+     * 计算每个标签的大小交给engine，文字宽度只在数据变化后测量一次，宽度变化时只需要重新判断是否折行
+     */
+    private void measureItems(int availableWidth) {
+        if (mItemsDirty) {
+            Arrays.fill(mTextWidths, 0, mCount, -1);
+        }
+        mItemsDirty = false;
+        mMeasuredAvailableWidth = availableWidth;
+        mLayouts.clear();
+        boolean rtl = isLayoutDirectionRtl();
+        mEngine.setItemCount(mCount);
+        TagTextMeasureCache cache = TagTextMeasureCache.getDefault();
+        for (int i = 0; i < mCount; i++) {
+            ChipStyle chip = getStyle(mStyleIds[i]);
+            TagTextStyle style = chip.style;
+            if (mTextWidths[i] < 0) {
+                // 数据变化时所有标签都要重新取宽度，相同的文字直接命中缓存
+                mTextWidths[i] = cache.measure(mTexts[i], chip.paint).getWidth();
+            }
+            int horizontal = style.getPaddingLeft() + style.getPaddingRight();
+            int maxTextWidth = Math.max(0, availableWidth - horizontal - style.getMarginLeft() - style.getMarginRight());
+            int textWidth = mTextWidths[i];
+            int textHeight = chip.lineHeight;
+            if (textWidth > maxTextWidth || !isSingleLine(mTexts[i])) {
+                StaticLayout layout = new StaticLayout(mTexts[i], chip.paint, maxTextWidth,
+                        Layout.Alignment.ALIGN_NORMAL, 1f, 0f, style.isIncludeFontPadding());
+                mLayouts.put(i, layout);
+                textWidth = 0;
+                for (int line = 0; line < layout.getLineCount(); line++) {
+                    textWidth = Math.max(textWidth, (int) Math.ceil(layout.getLineWidth(line)));
+                }
+                textHeight = layout.getHeight();
+            }
+            // engine按start/end理解左右margin
+            int start = rtl ? style.getMarginRight() : style.getMarginLeft();
+            int end = rtl ? style.getMarginLeft() : style.getMarginRight();
+            mEngine.setItem(i, textWidth + horizontal, textHeight + style.getPaddingTop() + style.getPaddingBottom(),
+                    start, style.getMarginTop(), end, style.getMarginBottom());
+        }
+    }
+
+    /**
+     * drawText不处理换行符，有换行符的文字也用StaticLayout绘制
+     */
+    private static boolean isSingleLine(CharSequence text) {
+        return TextUtils.indexOf(text, '\n') < 0;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        mEngine.layout(mGravity, mAlignItems, isLayoutDirectionRtl(), getPaddingLeft(), getPaddingTop(),
+                getWidth() - getPaddingLeft() - getPaddingRight());
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        FlowLayoutEngine engine = mEngine;
+        if (engine.getLineCount() == 0 || !canvas.getClipBounds(mTempRect)) return;
+        // 只绘制和裁剪区域相交的行，放在ScrollView中时每帧只绘制可见的标签
+        int firstLine = engine.getLineForOffset(mTempRect.top - getPaddingTop());
+        int lastLine = engine.getLineForOffset(mTempRect.bottom - getPaddingTop());
+        int end = Math.min(engine.getLineEnd(lastLine), engine.getOverflowStart());
+        for (int i = engine.getLineStart(firstLine); i < end; i++) {
+            drawItem(canvas, i);
+        }
+    }
+
+    private void drawItem(Canvas canvas, int position) {
+        ChipStyle chip = getStyle(mStyleIds[position]);
+        TagTextStyle style = chip.style;
+        int left = mEngine.getItemLeft(position);
+        int top = mEngine.getItemTop(position);
+        boolean checked = mSelectedView.contains(position);
+        boolean pressed = position == mPressedPosition;
+        int[] state = checked ? (pressed ? STATE_CHECKED_PRESSED : STATE_CHECKED)
+                : (pressed ? STATE_PRESSED : STATE_NORMAL);
+        Drawable background = style.getBackground();
+        if (background != null) {
+            background.setState(state);
+            background.setBounds(left, top, left + mEngine.getItemWidth(position), top + mEngine.getItemHeight(position));
+            background.draw(canvas);
+        }
+        ColorStateList textColor = style.getTextColor();
+        chip.paint.setColor(textColor.getColorForState(state, textColor.getDefaultColor()));
+        int textLeft = left + style.getPaddingLeft();
+        int textTop = top + style.getPaddingTop();
+        StaticLayout layout = mLayouts.get(position);
+        if (layout != null) {
+            canvas.save();
+            canvas.translate(textLeft, textTop);
+            layout.draw(canvas);
+            canvas.restore();
+        } else {
+            CharSequence text = mTexts[position];
+            canvas.drawText(text, 0, text.length(), textLeft, textTop + chip.baseline, chip.paint);
+        }
+    }
+
+    /**
+     * 只重绘一个标签所在的区域
+     */
+    private void invalidateItem(int position) {
+        if (position < 0 || position >= mCount || position >= mEngine.getOverflowStart()) return;
+        int left = mEngine.getItemLeft(position);
+        int top = mEngine.getItemTop(position);
+        invalidate(left, top, left + mEngine.getItemWidth(position), top + mEngine.getItemHeight(position));
+    }
+
+    private boolean isLayoutDirectionRtl() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                && getLayoutDirection() == View.LAYOUT_DIRECTION_RTL;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        int x = (int) event.getX();
+        int y = (int) event.getY();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                setPressedPosition(mEngine.findItemAt(x, y));
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (mPressedPosition >= 0 && mEngine.findItemAt(x, y) != mPressedPosition) {
+                    setPressedPosition(-1);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                mClickPosition = mPressedPosition;
+                setPressedPosition(-1);
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                setPressedPosition(-1);
+                break;
+        }
+        return super.onTouchEvent(event);
+    }
+
+    private void setPressedPosition(int position) {
+        if (mPressedPosition == position) return;
+        invalidateItem(mPressedPosition);
+        mPressedPosition = position;
+        invalidateItem(position);
+    }
+
+    @Override
+    public boolean performClick() {
+        boolean handled = super.performClick();
+        int position = mClickPosition;
+        mClickPosition = -1;
+        if (position >= 0) {
+            handled |= performItemClick(position);
+        }
+        return handled;
+    }
+
+    /**
+     * 点击标签：切换选中状态并回调监听器，触摸和无障碍服务的点击都走这里
+     */
+    private boolean performItemClick(int position) {
+        if (mAutoSelectEffect) {
+            boolean changed = true;
+            if (mSelectedView.contains(position)) {
+                mSelectedView.remove(position);
+            } else if (mSelectedMax == 1 && mSelectedView.size() == 1) {
+                //处理max_select=1的情况
+                int old = mSelectedView.nextSetBit(0);
+                mSelectedView.remove(old);
+                invalidateItem(old);
+                mAccessibilityHelper.invalidateVirtualView(old);
+                mSelectedView.add(position);
+            } else if (mSelectedMax > 0 && mSelectedView.size() >= mSelectedMax) {
+                changed = false;
+            } else {
+                mSelectedView.add(position);
+            }
+            if (changed) {
+                invalidateItem(position);
+                mAccessibilityHelper.invalidateVirtualView(position);
+                if (mOnSelectListener != null) {
+                    mOnSelectListener.onSelected(new HashSet<Integer>(mSelectedView.snapshot()));
+                }
+            }
+        }
+        mAccessibilityHelper.sendEventForVirtualView(position, AccessibilityEvent.TYPE_VIEW_CLICKED);
+        return mOnTagClickListener == null || mOnTagClickListener.onTagClick(this, position);
+    }
+
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        return mAccessibilityHelper.dispatchHoverEvent(event) || super.dispatchHoverEvent(event);
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        return mAccessibilityHelper.dispatchKeyEvent(event) || super.dispatchKeyEvent(event);
+    }
+
+    @Override
+    protected void onFocusChanged(boolean gainFocus, int direction, Rect previouslyFocusedRect) {
+        super.onFocusChanged(gainFocus, direction, previouslyFocusedRect);
+        mAccessibilityHelper.onFocusChanged(gainFocus, direction, previouslyFocusedRect);
+    }
+
+    /**
+     * 为每个显示的标签提供一个无障碍虚拟节点
+     */
+    private class ChipAccessibilityHelper extends ExploreByTouchHelper {
+
+        ChipAccessibilityHelper(View host) {
+            super(host);
+        }
+
+        @Override
+        protected int getVirtualViewAt(float x, float y) {
+            int position = mEngine.findItemAt((int) x, (int) y);
+            return position >= 0 ? position : INVALID_ID;
+        }
+
+        @Override
+        protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+            int count = Math.min(mCount, mEngine.getOverflowStart());
+            for (int i = 0; i < count; i++) {
+                virtualViewIds.add(i);
+            }
+        }
+
+        @Override
+        protected void onPopulateEventForVirtualView(int virtualViewId, AccessibilityEvent event) {
+            event.setContentDescription(getItemText(virtualViewId));
+        }
+
+        @Override
+        protected void onPopulateNodeForVirtualView(int virtualViewId, AccessibilityNodeInfoCompat node) {
+            node.setText(getItemText(virtualViewId));
+            node.setCheckable(mAutoSelectEffect);
+            node.setChecked(mSelectedView.contains(virtualViewId));
+            node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+            if (virtualViewId < mCount && virtualViewId < mEngine.getOverflowStart()) {
+                int left = mEngine.getItemLeft(virtualViewId);
+                int top = mEngine.getItemTop(virtualViewId);
+                mTempRect.set(left, top, left + mEngine.getItemWidth(virtualViewId),
+                        top + mEngine.getItemHeight(virtualViewId));
+            } else {
+                // 节点必须有非空的位置
+                mTempRect.set(0, 0, 1, 1);
+            }
+            node.setBoundsInParent(mTempRect);
+        }
+
+        @Override
+        protected boolean onPerformActionForVirtualView(int virtualViewId, int action, Bundle arguments) {
+            if (action == AccessibilityNodeInfoCompat.ACTION_CLICK && virtualViewId < mCount) {
+                performItemClick(virtualViewId);
+                return true;
+            }
+            return false;
+        }
+
+        private CharSequence getItemText(int position) {
+            // 数据变化后无障碍服务可能还持有旧的id
+            return position < mCount ? mTexts[position] : "";
+        }
+    }
+
+    @Override
+    public void onChanged() {
+        mSelectedView.clear();
+        loadItems();
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        mSelectedView.offset(positionStart, Integer.MAX_VALUE, itemCount);
+        loadItems();
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        mSelectedView.removeRange(positionStart, positionStart + itemCount);
+        mSelectedView.offset(positionStart + itemCount, Integer.MAX_VALUE, -itemCount);
+        loadItems();
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        loadItems();
+    }
+
+    @Override
+    public void onItemMoved(int fromPosition, int toPosition) {
+        boolean selected = mSelectedView.remove(fromPosition);
+        if (fromPosition < toPosition) {
+            mSelectedView.offset(fromPosition + 1, toPosition + 1, -1);
+        } else {
+            mSelectedView.offset(toPosition, fromPosition, 1);
+        }
+        if (selected) mSelectedView.add(toPosition);
+        loadItems();
+    }
+
+    @Override
+    public void onSelectedListChanged() {
+        mSelectedView.clear();
+        TagSelection preCheckedList = mTagAdapter.getPreCheckedList();
+        for (int i = preCheckedList.nextSetBit(0); i >= 0 && i < mCount; i = preCheckedList.nextSetBit(i + 1)) {
+            mSelectedView.add(i);
+        }
+        invalidate();
+        mAccessibilityHelper.invalidateRoot();
+        if (mOnSelectListener != null) {
+            mOnSelectListener.onSelected(new HashSet<Integer>(mSelectedView.snapshot()));
+        }
+    }
+
+    private static final String KEY_CHOOSE_POS = "key_choose_pos";
+    private static final String KEY_DEFAULT = "key_default";
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        Bundle bundle = new Bundle();
+        bundle.putParcelable(KEY_DEFAULT, super.onSaveInstanceState());
+        bundle.putLongArray(KEY_CHOOSE_POS, mSelectedView.toLongArray());
+        return bundle;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (state instanceof Bundle) {
+            Bundle bundle = (Bundle) state;
+            long[] selectPos = bundle.getLongArray(KEY_CHOOSE_POS);
+            if (selectPos != null) {
+                mSelectedView.addAll(TagSelection.valueOf(selectPos));
+                invalidate();
+            }
+            super.onRestoreInstanceState(bundle.getParcelable(KEY_DEFAULT));
+            return;
+        }
+        super.onRestoreInstanceState(state);
+    }
+}
@@ -5,19 +5,91 @@ import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.view.View;
 
 import top.cokernut.customview.R;
 
 /**
- * 水滴
+ * 水滴：从顶部慢慢形成、落下，落到底部后溅开
+ * 每个阶段的水滴形状是一个关键帧，由四段三次贝塞尔曲线组成，只在大小变化时计算一次，
+ * 每一帧在两个关键帧的控制点之间插值后重新填充同一个Path，不创建任何对象
  */
 public class WaterDropView extends View {
     private int mWaterColor = Color.GREEN; //水滴颜色
 
     private Paint mPaint;
 
+    private static final long ANIM_DURATION = 1600;
+    private final DamageTracker mDamageTracker = new DamageTracker(this);
+    /**
+     * 水滴的动画，由共用的FrameClock驱动，一个周期1.6秒
+     */
+    private final FrameClockAnimation mAnimation = new FrameClockAnimation(this, new FrameClockAnimation.Listener() {
+        @Override
+        public boolean onAnimationFrame(long elapsedMillis) {
+            setProgress((float) (elapsedMillis % ANIM_DURATION) / ANIM_DURATION);
+            return true;
+        }
+    });
+
+    /**
+     * 各阶段结束时的进度：形成、下落、落地变扁，剩下的时间溅开并消失
+     */
+    private static final float FORM_END = 0.4f;
+    private static final float FALL_END = 0.65f;
+    private static final float IMPACT_END = 0.75f;
+
+    /**
+     * 关键帧：刚开始形成、即将脱落、下落中、落到底部、溅开
+     */
+    private static final int KEYFRAME_FORMING = 0;
+    private static final int KEYFRAME_HANGING = 1;
+    private static final int KEYFRAME_FALLING = 2;
+    private static final int KEYFRAME_LANDED = 3;
+    private static final int KEYFRAME_IMPACT = 4;
+    private static final int KEYFRAME_SPLASH = 5;
+    private static final int KEYFRAME_COUNT = 6;
+    /**
+     * 每个关键帧4段曲线，每段3个点（两个控制点和终点），起点是最后一段的终点
+     */
+    private static final int SEGMENTS = 4;
+    private static final int POINT_FLOATS = SEGMENTS * 3 * 2;
+    /**
+     * 圆弧用三次贝塞尔曲线近似时控制点的比例
+     */
+    private static final float CIRCLE_CONTROL = 0.5522848f;
+
+    /**
+     * 溅开的小水珠的水平和竖直初速度，单位是水滴半径每个阶段
+     */
+    private static final float[] DROPLET_VX = {-2.2f, -1.2f, 1.2f, 2.2f};
+    private static final float[] DROPLET_VY = {3f, 4.5f, 4.5f, 3f};
+
+    private final float[][] mKeyframes = new float[KEYFRAME_COUNT][POINT_FLOATS];
+    private final float[] mFrame = new float[POINT_FLOATS];
+    private final Path mPath = new Path();
+    private float mProgress;
+    private float mRadius;
+    private float mCenterX;
+    private float mGroundY;
+    /**
+     * 下落阶段水滴移动的距离
+     */
+    private float mFallDistance;
+    /**
+     * 溅开阶段的进度，小于0时不绘制小水珠
+     */
+    private float mSplash = -1;
+    private final RectF mDropBounds = new RectF();
+    private final RectF mLastBounds = new RectF();
+    /**
+     * 溅开时小水珠可能到达的区域，只在大小变化时计算
+     */
+    private final RectF mSplashBounds = new RectF();
+
     public WaterDropView(Context context) {
         super(context);
         init(null, 0);
@@ -43,18 +115,166 @@ public class WaterDropView extends View {
         mPaint.setColor(mWaterColor);
     }
 
+    /**
+     * 关键帧按显示的宽高计算，只在大小变化时计算一次
+     */
     @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        float r = Math.min(w / 4f, h / 6f);
+        float top = r * 0.2f;
+        mRadius = r;
+        mCenterX = w / 2f;
+        mGroundY = h - r * 0.5f;
+        setDropShape(mKeyframes[KEYFRAME_FORMING], top - r * 0.05f, top + r * 0.05f, r * 0.5f, r * 0.25f, 0f);
+        setDropShape(mKeyframes[KEYFRAME_HANGING], top, top + r * 1.6f, r * 0.8f, r * 0.85f, 1f);
+        setDropShape(mKeyframes[KEYFRAME_FALLING], top + r * 0.2f, top + r * 1.6f, r * 0.75f, r * 0.8f, 0.8f);
+        mFallDistance = mGroundY - (top + r * 1.6f + r * 0.8f);
+        setDropShape(mKeyframes[KEYFRAME_LANDED], top + r * 0.2f + mFallDistance, top + r * 1.6f + mFallDistance,
+                r * 0.75f, r * 0.8f, 0.8f);
+        setDropShape(mKeyframes[KEYFRAME_IMPACT], mGroundY - r * 1.05f, mGroundY - r * 0.45f, r * 1.1f, r * 0.45f, 0.2f);
+        setDropShape(mKeyframes[KEYFRAME_SPLASH], mGroundY - r * 0.22f, mGroundY - r * 0.1f, r * 1.8f, r * 0.1f, 0f);
+        mSplashBounds.set(mCenterX - r * 2.6f, mGroundY - r * 1.4f, mCenterX + r * 2.6f, mGroundY + r * 0.2f);
+        mLastBounds.setEmpty();
+        setProgress(mProgress);
+    }
 
+    /**
+     * 计算一个水滴形状的控制点：下半部分是椭圆，上半部分收到顶点
+     *
+     * @param tipY      顶点的y
+     * @param bulbY     椭圆中心的y
+     * @param rx        水平半径
+     * @param ry        下半部分的竖直半径
+     * @param sharpness 0时上半部分也是椭圆，1时顶点是尖的
+     */
+    private void setDropShape(float[] out, float tipY, float bulbY, float rx, float ry, float sharpness) {
+        float cx = mCenterX;
+        float k = CIRCLE_CONTROL;
+        float upper = bulbY - tipY;
+        float tipControlX = k * rx * (1 - sharpness);
+        float tipControlY = tipY + upper * sharpness * 0.5f;
+        int i = 0;
+        // 顶点到右边
+        i = putPoint(out, i, cx + tipControlX, tipControlY);
+        i = putPoint(out, i, cx + rx, bulbY - k * upper);
+        i = putPoint(out, i, cx + rx, bulbY);
+        // 右边到底部
+        i = putPoint(out, i, cx + rx, bulbY + k * ry);
+        i = putPoint(out, i, cx + k * rx, bulbY + ry);
+        i = putPoint(out, i, cx, bulbY + ry);
+        // 底部到左边
+        i = putPoint(out, i, cx - k * rx, bulbY + ry);
+        i = putPoint(out, i, cx - rx, bulbY + k * ry);
+        i = putPoint(out, i, cx - rx, bulbY);
+        // 左边回到顶点
+        i = putPoint(out, i, cx - rx, bulbY - k * upper);
+        i = putPoint(out, i, cx - tipControlX, tipControlY);
+        putPoint(out, i, cx, tipY);
+    }
+
+    private static int putPoint(float[] out, int index, float x, float y) {
+        out[index] = x;
+        out[index + 1] = y;
+        return index + 2;
+    }
+
+    /**
+     * 设置动画的进度，计算这一帧的水滴形状并刷新变化的区域，动画和测试使用
+     *
+     * @param progress 0到1，一个周期
+     */
+    void setProgress(float progress) {
+        mProgress = progress;
+        float dy = 0;
+        int alpha = 255;
+        mSplash = -1;
+        if (progress < FORM_END) {
+            interpolate(KEYFRAME_FORMING, KEYFRAME_HANGING, smooth(progress / FORM_END), 0);
+        } else if (progress < FALL_END) {
+            float t = (progress - FORM_END) / (FALL_END - FORM_END);
+            // 脱落后很快变圆，同时加速下落
+            dy = mFallDistance * t * t;
+            interpolate(KEYFRAME_HANGING, KEYFRAME_FALLING, smooth(Math.min(1f, t * 3)), dy);
+        } else if (progress < IMPACT_END) {
+            interpolate(KEYFRAME_LANDED, KEYFRAME_IMPACT, smooth((progress - FALL_END) / (IMPACT_END - FALL_END)), 0);
+        } else {
+            float t = (progress - IMPACT_END) / (1 - IMPACT_END);
+            interpolate(KEYFRAME_IMPACT, KEYFRAME_SPLASH, smooth(t), 0);
+            alpha = (int) (255 * (1 - t));
+            mSplash = t;
+        }
+        mPaint.setAlpha(alpha * Color.alpha(mWaterColor) / 255);
+        buildPath();
+        mPath.computeBounds(mDropBounds, true);
+        if (mSplash >= 0) {
+            mDropBounds.union(mSplashBounds);
+        }
+        mLastBounds.union(mDropBounds);
+        mDamageTracker.invalidate((int) Math.floor(mLastBounds.left) - 1, (int) Math.floor(mLastBounds.top) - 1,
+                (int) Math.ceil(mLastBounds.right) + 1, (int) Math.ceil(mLastBounds.bottom) + 1);
+        mLastBounds.set(mDropBounds);
+    }
+
+    /**
+     * 在两个关键帧的控制点之间插值，结果保存在mFrame中
+     */
+    private void interpolate(int from, int to, float fraction, float dy) {
+        float[] a = mKeyframes[from];
+        float[] b = mKeyframes[to];
+        for (int i = 0; i < POINT_FLOATS; i += 2) {
+            mFrame[i] = a[i] + (b[i] - a[i]) * fraction;
+            mFrame[i + 1] = a[i + 1] + (b[i + 1] - a[i + 1]) * fraction + dy;
+        }
+    }
+
+    private void buildPath() {
+        float[] p = mFrame;
+        mPath.reset();
+        mPath.moveTo(p[POINT_FLOATS - 2], p[POINT_FLOATS - 1]);
+        for (int i = 0; i < POINT_FLOATS; i += 6) {
+            mPath.cubicTo(p[i], p[i + 1], p[i + 2], p[i + 3], p[i + 4], p[i + 5]);
+        }
+        mPath.close();
+    }
+
+    private static float smooth(float t) {
+        return t * t * (3 - 2 * t);
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        canvas.drawPath(mPath, mPaint);
+        if (mSplash >= 0) {
+            // 小水珠向两边飞出，落回底部时消失
+            float t = mSplash;
+            float radius = mRadius * 0.18f * (1 - t);
+            for (int i = 0; i < DROPLET_VX.length; i++) {
+                float x = mCenterX + DROPLET_VX[i] * mRadius * t;
+                float y = mGroundY - DROPLET_VY[i] * mRadius * t * (1 - t);
+                canvas.drawCircle(x, y, radius, mPaint);
+            }
+        }
+        mDamageTracker.drawOverlay(canvas);
+    }
+
+    public void startAnim() {
+        stopAnim();
+        mAnimation.start();
+    }
 
+    public void stopAnim() {
+        mAnimation.stop();
+        setProgress(0);
     }
 
+    /**
+     * @return 局部刷新的统计，可以查看每秒刷新的像素数
+     */
+    public DamageTracker getDamageTracker() {
+        return mDamageTracker;
+    }
 
     /**
      * 取水滴颜色
@@ -72,5 +292,9 @@ public class WaterDropView extends View {
      */
     public void setWaterColor(int color) {
         mWaterColor = color;
+        mPaint.setColor(color);
+        // 重新按进度计算透明度
+        setProgress(mProgress);
+        invalidate();
     }
 }
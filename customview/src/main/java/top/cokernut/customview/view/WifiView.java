@@ -1,8 +1,5 @@
 package top.cokernut.customview.view;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
@@ -20,12 +17,47 @@ import top.cokernut.customview.R;
 public class WifiView extends View {
     private int mWifiColor = Color.WHITE; //颜色
 
+    /**
+     * 动画值的个数，动画值为0到4
+     */
+    private static final int VALUE_COUNT = 5;
+    /**
+     * 图形的种类：只有扇形，以及扇形加1到3圈弧线，也是扇形和弧线边界的个数
+     */
+    private static final int LEVEL_COUNT = VALUE_COUNT - 1;
+
     private Paint mPaint;
     private float mWidth = 0f;
-    private ValueAnimator valueAnimator;
+    private static final long ANIM_DURATION = 4000;
+    private final DamageTracker mDamageTracker = new DamageTracker(this);
+    /**
+     * 弧线逐圈出现的动画，由共用的FrameClock驱动，一个周期4秒，先加速后减速
+     */
+    private final FrameClockAnimation mAnimation = new FrameClockAnimation(this, new FrameClockAnimation.Listener() {
+        @Override
+        public boolean onAnimationFrame(long elapsedMillis) {
+            float fraction = (float) (elapsedMillis % ANIM_DURATION) / ANIM_DURATION;
+            // 和AccelerateDecelerateInterpolator相同
+            float eased = (float) (Math.cos((fraction + 1) * Math.PI) / 2.0f) + 0.5f;
+            int value = (int) (VALUE_COUNT * eased);
+            if (value != mAnimatedValue) {
+                setAnimatedValue(value);
+            }
+            return true;
+        }
+    });
     private int mAnimatedValue = 0;
-    private RectF mRectF;
+    /**
+     * 中间的扇形和外面每一圈弧线的边界，只在大小变化时计算
+     */
+    private final RectF[] mArcRects = new RectF[LEVEL_COUNT];
     private int r = 0;
+    /**
+     * 绘制缓存模式：每种弧线数量对应一个缓存，只在大小变化时重新绘制
+     */
+    private boolean mRenderCacheEnabled;
+    private final RenderCache[] mLevelCaches = new RenderCache[LEVEL_COUNT];
+    private final Paint mCachePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
     public WifiView(Context context) {
         super(context);
@@ -43,7 +75,7 @@ public class WifiView extends View {
     }
 
     private void init(AttributeSet attrs, int defStyle) {
-        final TypedArray a = getContext().obtainStyledAttributes(attrs, R.styleable.WaterDropView, defStyle, 0);
+        final TypedArray a = getContext().obtainStyledAttributes(attrs, R.styleable.WifiView, defStyle, 0);
         mWifiColor = a.getColor(R.styleable.WifiView_wifiColor, mWifiColor);
         a.recycle();
         mPaint = new Paint();
@@ -51,6 +83,11 @@ public class WifiView extends View {
         mPaint.setStyle(Paint.Style.FILL);
         mPaint.setColor(mWifiColor);
         mPaint.setStrokeWidth(8);
+        for (int i = 0; i < LEVEL_COUNT; i++) {
+            mArcRects[i] = new RectF();
+            mLevelCaches[i] = new RenderCache();
+        }
+        mCachePaint.setColor(mWifiColor);
     }
 
     /**
@@ -59,83 +96,150 @@ public class WifiView extends View {
      * getMeasuredWidth()：对View上的内容进行测量后得到的View内容占据的宽度。
      * 很简单，getWidth()就是View显示之后的width，而getMeasuredWidth，
      * 从前面的源代码就可以看出来其实是在measure里面传入的参数，具体是否一样完全要看程序最后的计算。
+     * 弧线的边界按显示的宽高计算，只在大小变化时计算一次
      */
-    // 如果对View的宽高进行修改了之后，不要调用super.onMeasure(widthMeasureSpec,heightMeasureSpec);
-    // 要调用setMeasuredDimension(widthsize,heightsize); 这个函数。
     @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-        if (getMeasuredWidth() > getHeight())
-            mWidth = getMeasuredHeight();
-        else
-            mWidth = getMeasuredWidth();
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mWidth = Math.min(w, h);
         r = (int) (mWidth / 10);
+        for (int i = 0; i < LEVEL_COUNT; i++) {
+            float radius = r * (1 + i);
+            mArcRects[i].set(mWidth / 2 - radius, mWidth / 2 - radius, mWidth / 2 + radius, mWidth / 2 + radius);
+            mLevelCaches[i].invalidate();
+        }
     }
 
+    /**
+     * 绘制过程中不创建任何对象
+     */
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-       // canvas.save(); //锁画布(为了保存之前的画布状态)
-        mRectF = new RectF(mWidth/2-r, mWidth/2-r, mWidth/2+r, mWidth/2+r);
+        int arcs = getArcCount(mAnimatedValue);
+        if (mRenderCacheEnabled && getWidth() > 0 && getHeight() > 0) {
+            RenderCache cache = mLevelCaches[arcs];
+            if (!cache.isValid()) {
+                // 缓存中只保存形状，颜色在合成时使用
+                mPaint.setColor(Color.BLACK);
+                drawArcs(cache.begin(getWidth(), getHeight()), arcs);
+                mPaint.setColor(mWifiColor);
+            }
+            cache.draw(canvas, mCachePaint);
+        } else {
+            drawArcs(canvas, arcs);
+        }
+        mDamageTracker.drawOverlay(canvas);
+    }
+
+    /**
+     * 绘制中间的扇形和外面arcs圈弧线
+     */
+    private void drawArcs(Canvas canvas, int arcs) {
         mPaint.setStyle(Paint.Style.FILL);
-        canvas.drawArc(mRectF, 225, 90, true, mPaint);
+        canvas.drawArc(mArcRects[0], 225, 90, true, mPaint);
         mPaint.setStyle(Paint.Style.STROKE);
-        if (mAnimatedValue > 0 && mAnimatedValue < 5) {
-            for (int i = 1; i < mAnimatedValue; i++) {
-                mRectF = new RectF(mWidth/2-r*(1+i), mWidth/2-r*(1+i), mWidth/2+r*(1+i), mWidth/2+r*(1+i));
-                canvas.drawArc(mRectF, 225, 90, false, mPaint);
-            }
+        for (int i = 1; i <= arcs; i++) {
+            canvas.drawArc(mArcRects[i], 225, 90, false, mPaint);
         }
-      //  canvas.restore();
     }
 
+    /**
+     * 开启绘制缓存：每种弧线数量的图形画到ALPHA_8的Bitmap中，每一帧只合成一次，
+     * 最多占用4 x 宽 x 高字节的内存，修改颜色不需要重新绘制缓存
+     */
+    public void setRenderCacheEnabled(boolean enabled) {
+        if (mRenderCacheEnabled == enabled) return;
+        mRenderCacheEnabled = enabled;
+        if (!enabled) {
+            releaseRenderCache();
+        }
+        invalidate();
+    }
 
-    public void startAnim() {
-        stopAnim();
-        startViewAnim(0, 5, 4000);
+    public boolean isRenderCacheEnabled() {
+        return mRenderCacheEnabled;
     }
 
+    /**
+     * @return 绘制缓存占用的内存，单位字节
+     */
+    public int getRenderCacheByteCount() {
+        int count = 0;
+        for (RenderCache cache : mLevelCaches) {
+            count += cache.getByteCount();
+        }
+        return count;
+    }
 
-    public void stopAnim() {
-        if (valueAnimator != null) {
-            clearAnimation();
-            valueAnimator.setRepeatCount(0);
-            valueAnimator.cancel();
-            valueAnimator.end();
-            mAnimatedValue = 0;
-            postInvalidate();
+    private void releaseRenderCache() {
+        for (RenderCache cache : mLevelCaches) {
+            cache.release();
         }
     }
 
-    private ValueAnimator startViewAnim(int start, int end, long time) {
-        valueAnimator = ValueAnimator.ofInt(start, end);
-        valueAnimator.setDuration(time);
-        valueAnimator.setRepeatCount(ValueAnimator.INFINITE);
-        valueAnimator.setRepeatMode(ValueAnimator.RESTART);
-        valueAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                mAnimatedValue = (int) animation.getAnimatedValue();
-                invalidate();
-            }
-        });
-        valueAnimator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationStart(Animator animation) {
-                super.onAnimationStart(animation);
-            }
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        releaseRenderCache();
+    }
 
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-            }
-        });
-        if (!valueAnimator.isRunning()) {
-            valueAnimator.start();
+    /**
+     * 设置显示的弧线数量，动画和测试使用
+     *
+     * @param value 0到4，显示value-1圈弧线
+     */
+    void setAnimatedValue(int value) {
+        int oldArcs = getArcCount(mAnimatedValue);
+        mAnimatedValue = value;
+        int arcs = getArcCount(value);
+        if (arcs != oldArcs) {
+            invalidateArcs(Math.min(oldArcs, arcs) + 1, Math.max(oldArcs, arcs));
         }
-        return valueAnimator;
     }
 
+    /**
+     * @return 显示的弧线圈数
+     */
+    private static int getArcCount(int value) {
+        return value > 0 && value < VALUE_COUNT ? value - 1 : 0;
+    }
+
+    /**
+     * 只刷新第from到第to圈弧线占用的区域：弧线从225度到315度，
+     * 左右和上边由最外圈决定，下边由最内圈决定
+     */
+    private void invalidateArcs(int from, int to) {
+        float center = mWidth / 2;
+        float outer = r * (1 + to);
+        float inner = r * (1 + from);
+        // 45度方向的坐标
+        float outerOffset = outer * 0.70710677f;
+        // 描边宽度的一半，再多一个像素留给抗锯齿
+        float outset = mPaint.getStrokeWidth() / 2 + 1;
+        mDamageTracker.invalidate((int) Math.floor(center - outerOffset - outset),
+                (int) Math.floor(center - outer - outset),
+                (int) Math.ceil(center + outerOffset + outset),
+                (int) Math.ceil(center - inner * 0.70710677f + outset));
+    }
+
+    /**
+     * @return 局部刷新的统计，可以查看每秒刷新的像素数
+     */
+    public DamageTracker getDamageTracker() {
+        return mDamageTracker;
+    }
+
+    public void startAnim() {
+        stopAnim();
+        mAnimation.start();
+    }
+
+    public void stopAnim() {
+        mAnimation.stop();
+        mAnimatedValue = 0;
+        postInvalidate();
+    }
 
     /**
      * 取颜色
@@ -153,5 +257,8 @@ public class WifiView extends View {
      */
     public void setWifiColor(int color) {
         mWifiColor = color;
+        mPaint.setColor(color);
+        mCachePaint.setColor(color);
+        invalidate();
     }
 }
\ No newline at end of file
@@ -0,0 +1,265 @@
+package top.cokernut.customview.view;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 用随机生成的child配置对比FlowLayoutEngine和一个逐项直接计算的参考实现，
+ * 覆盖padding、gravity、flow_align_items、间距、最大行数、GONE和从右到左排列
+ */
+public class FlowLayoutEngineGoldenTest {
+    private static final int ROUNDS = 5000;
+
+    /**
+     * 一组随机配置
+     */
+    private static class Config {
+        int count;
+        int[] widths;
+        int[] heights;
+        int[] margins;
+        boolean[] gone;
+        int horizontalSpacing;
+        int verticalSpacing;
+        int maxLines;
+        int availableWidth;
+        int gravity;
+        int alignItems;
+        boolean rtl;
+        int paddingLeft;
+        int paddingTop;
+
+        static Config random(Random random) {
+            Config config = new Config();
+            config.count = random.nextInt(40);
+            config.widths = new int[config.count];
+            config.heights = new int[config.count];
+            config.margins = new int[config.count * 4];
+            config.gone = new boolean[config.count];
+            for (int i = 0; i < config.count; i++) {
+                config.randomizeItem(random, i);
+            }
+            config.horizontalSpacing = random.nextInt(3) == 0 ? 0 : random.nextInt(9);
+            config.verticalSpacing = random.nextInt(3) == 0 ? 0 : random.nextInt(9);
+            config.maxLines = random.nextInt(3) == 0 ? 1 + random.nextInt(5) : 0;
+            config.availableWidth = 20 + random.nextInt(180);
+            config.gravity = -1 + random.nextInt(6);
+            config.alignItems = random.nextInt(3);
+            config.rtl = random.nextBoolean();
+            config.paddingLeft = random.nextInt(21);
+            config.paddingTop = random.nextInt(21);
+            return config;
+        }
+
+        void randomizeItem(Random random, int i) {
+            widths[i] = random.nextInt(61);
+            heights[i] = random.nextInt(41);
+            for (int j = 0; j < 4; j++) {
+                margins[i * 4 + j] = random.nextInt(7);
+            }
+            gone[i] = random.nextInt(7) == 0;
+        }
+
+        void apply(FlowLayoutEngine engine) {
+            engine.setSpacing(horizontalSpacing, verticalSpacing);
+            engine.setMaxLines(maxLines);
+            engine.setItemCount(count);
+            for (int i = 0; i < count; i++) {
+                if (gone[i]) {
+                    engine.setItemGone(i);
+                } else {
+                    engine.setItem(i, widths[i], heights[i], margins[i * 4], margins[i * 4 + 1],
+                            margins[i * 4 + 2], margins[i * 4 + 3]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 参考实现的结果：每个显示的item的位置，不显示的item为Integer.MIN_VALUE
+     */
+    private static class Expected {
+        int[] lefts;
+        int[] tops;
+        int lineCount;
+        int contentWidth;
+        int contentHeight;
+    }
+
+    /**
+     * 参考实现：先把显示的item分成行，再逐行逐项计算位置，不做任何增量和缓存
+     */
+    private static Expected reference(Config c) {
+        List<List<Integer>> lines = new ArrayList<>();
+        List<Integer> line = new ArrayList<>();
+        int lineWidth = 0;
+        for (int i = 0; i < c.count; i++) {
+            if (c.gone[i]) continue;
+            int outer = c.widths[i] + c.margins[i * 4] + c.margins[i * 4 + 2];
+            if (!line.isEmpty() && lineWidth + c.horizontalSpacing + outer > c.availableWidth) {
+                lines.add(line);
+                line = new ArrayList<>();
+                lineWidth = 0;
+            }
+            lineWidth += line.isEmpty() ? outer : c.horizontalSpacing + outer;
+            line.add(i);
+        }
+        lines.add(line);
+        if (c.maxLines > 0 && lines.size() > c.maxLines) {
+            lines = lines.subList(0, c.maxLines);
+        }
+
+        Expected expected = new Expected();
+        expected.lefts = new int[c.count];
+        expected.tops = new int[c.count];
+        java.util.Arrays.fill(expected.lefts, Integer.MIN_VALUE);
+        java.util.Arrays.fill(expected.tops, Integer.MIN_VALUE);
+        expected.lineCount = lines.size();
+        int lineTop = 0;
+        for (int l = 0; l < lines.size(); l++) {
+            List<Integer> items = lines.get(l);
+            if (l > 0) lineTop += c.verticalSpacing;
+            int width = 0;
+            int height = 0;
+            for (int k = 0; k < items.size(); k++) {
+                int i = items.get(k);
+                width += c.widths[i] + c.margins[i * 4] + c.margins[i * 4 + 2];
+                if (k > 0) width += c.horizontalSpacing;
+                height = Math.max(height, c.heights[i] + c.margins[i * 4 + 1] + c.margins[i * 4 + 3]);
+            }
+            expected.contentWidth = Math.max(expected.contentWidth, width);
+            int free = Math.max(0, c.availableWidth - width);
+            int n = items.size();
+            int x;
+            if (c.gravity == FlowLayoutEngine.CENTER) {
+                x = (c.availableWidth - width) / 2;
+            } else if (c.gravity == FlowLayoutEngine.RIGHT) {
+                x = c.availableWidth - width;
+            } else {
+                x = 0;
+            }
+            for (int k = 0; k < n; k++) {
+                int i = items.get(k);
+                double extra = 0;
+                if (c.gravity == FlowLayoutEngine.SPACE_BETWEEN) {
+                    extra = n > 1 ? (double) free * k / (n - 1) : 0;
+                } else if (c.gravity == FlowLayoutEngine.SPACE_AROUND) {
+                    extra = (double) free * (k + 0.5) / n;
+                } else if (c.gravity == FlowLayoutEngine.SPACE_EVENLY) {
+                    extra = (double) free * (k + 1) / (n + 1);
+                }
+                int left = x + (int) Math.floor(extra + 1e-9) + c.margins[i * 4];
+                int outerHeight = c.heights[i] + c.margins[i * 4 + 1] + c.margins[i * 4 + 3];
+                int top = lineTop;
+                if (c.alignItems == FlowLayoutEngine.ALIGN_CENTER) {
+                    top += (height - outerHeight) / 2;
+                } else if (c.alignItems == FlowLayoutEngine.ALIGN_BOTTOM) {
+                    top += height - outerHeight;
+                }
+                expected.lefts[i] = c.rtl
+                        ? c.paddingLeft + c.availableWidth - left - c.widths[i]
+                        : c.paddingLeft + left;
+                expected.tops[i] = c.paddingTop + top + c.margins[i * 4 + 1];
+                x += c.widths[i] + c.margins[i * 4] + c.margins[i * 4 + 2] + c.horizontalSpacing;
+            }
+            lineTop += height;
+        }
+        expected.contentHeight = lineTop;
+        return expected;
+    }
+
+    private static void assertMatches(String message, Config c, FlowLayoutEngine engine) {
+        engine.layout(c.gravity, c.alignItems, c.rtl, c.paddingLeft, c.paddingTop, c.availableWidth);
+        Expected expected = reference(c);
+        assertEquals(message, expected.lineCount, engine.getLineCount());
+        assertEquals(message, expected.contentWidth, engine.getContentWidth());
+        assertEquals(message, expected.contentHeight, engine.getContentHeight());
+        int overflowStart = engine.getOverflowStart();
+        for (int i = 0; i < c.count; i++) {
+            if (c.gone[i]) continue;
+            if (expected.lefts[i] == Integer.MIN_VALUE) {
+                assertTrue(message + " item " + i + " should overflow", i >= overflowStart);
+                continue;
+            }
+            assertTrue(message + " item " + i + " should be visible", i < overflowStart);
+            assertEquals(message + " left of " + i, expected.lefts[i], engine.getItemLeft(i));
+            assertEquals(message + " top of " + i, expected.tops[i], engine.getItemTop(i));
+        }
+    }
+
+    /**
+     * 逐个item检查坐标，和findItemAt的结果对比
+     */
+    private static void assertHitTest(String message, Config c, FlowLayoutEngine engine, Random random) {
+        Expected expected = reference(c);
+        int right = c.paddingLeft + c.availableWidth + 20;
+        int bottom = c.paddingTop + expected.contentHeight + 20;
+        for (int n = 0; n < 50; n++) {
+            int x = random.nextInt(right + 20) - 20;
+            int y = random.nextInt(bottom + 20) - 20;
+            int hit = -1;
+            for (int i = 0; i < c.count; i++) {
+                if (expected.lefts[i] == Integer.MIN_VALUE || c.gone[i]) continue;
+                if (x >= expected.lefts[i] && x < expected.lefts[i] + c.widths[i]
+                        && y >= expected.tops[i] && y < expected.tops[i] + c.heights[i]) {
+                    hit = i;
+                    break;
+                }
+            }
+            assertEquals(message + " hit at " + x + "," + y, hit, engine.findItemAt(x, y));
+        }
+    }
+
+    @Test
+    public void layout_matchesReferenceForRandomConfigs() throws Exception {
+        Random random = new Random(20161018);
+        for (int round = 0; round < ROUNDS; round++) {
+            Config config = Config.random(random);
+            FlowLayoutEngine engine = new FlowLayoutEngine();
+            config.apply(engine);
+            engine.breakLines(config.availableWidth);
+            assertMatches("round " + round, config, engine);
+            assertHitTest("round " + round, config, engine, random);
+        }
+    }
+
+    @Test
+    public void partialBreak_matchesReferenceAfterRandomChanges() throws Exception {
+        Random random = new Random(1018);
+        for (int round = 0; round < ROUNDS; round++) {
+            Config config = Config.random(random);
+            FlowLayoutEngine engine = new FlowLayoutEngine();
+            config.apply(engine);
+            engine.breakLines(config.availableWidth);
+            // 修改、增加或删除少量item，宽度不变时只会从变化的行开始重新换行
+            int changes = 1 + random.nextInt(3);
+            for (int n = 0; n < changes && config.count > 0; n++) {
+                config.randomizeItem(random, random.nextInt(config.count));
+            }
+            if (random.nextInt(4) == 0) {
+                int count = Math.max(0, config.count + random.nextInt(11) - 5);
+                int[] widths = java.util.Arrays.copyOf(config.widths, count);
+                int[] heights = java.util.Arrays.copyOf(config.heights, count);
+                int[] margins = java.util.Arrays.copyOf(config.margins, count * 4);
+                boolean[] gone = java.util.Arrays.copyOf(config.gone, count);
+                int old = config.count;
+                config.count = count;
+                config.widths = widths;
+                config.heights = heights;
+                config.margins = margins;
+                config.gone = gone;
+                for (int i = old; i < count; i++) {
+                    config.randomizeItem(random, i);
+                }
+            }
+            config.apply(engine);
+            engine.breakLines(config.availableWidth);
+            assertMatches("round " + round, config, engine);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package top.cokernut.customview.view;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * FlowLayoutEngine的换行和定位测试，直接在JVM上运行
+ */
+public class FlowLayoutEngineTest {
+
+    @Test
+    public void breakLines_wrapsWhenLineIsFull() throws Exception {
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        engine.setItems(5, new int[]{30, 30, 30, 50, 10}, new int[]{10, 20, 10, 15, 5}, null);
+
+        assertEquals(2, engine.breakLines(100));
+        assertEquals(0, engine.getLineStart(0));
+        assertEquals(3, engine.getLineEnd(0));
+        assertEquals(90, engine.getLineWidth(0));
+        assertEquals(20, engine.getLineHeight(0));
+        assertEquals(3, engine.getLineStart(1));
+        assertEquals(5, engine.getLineEnd(1));
+        assertEquals(60, engine.getLineWidth(1));
+        assertEquals(20, engine.getLineTop(1));
+        assertEquals(90, engine.getContentWidth());
+        assertEquals(35, engine.getContentHeight());
+    }
+
+    @Test
+    public void breakLines_countsMargins() throws Exception {
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        engine.setItems(2, new int[]{40, 40}, new int[]{10, 10}, new int[]{5, 2, 5, 2, 5, 2, 5, 2});
+
+        assertEquals(1, engine.breakLines(100));
+        assertEquals(100, engine.getLineWidth(0));
+        assertEquals(14, engine.getLineHeight(0));
+        assertEquals(2, engine.breakLines(99));
+    }
+
+    @Test
+    public void breakLines_oversizedItemTakesItsOwnLine() throws Exception {
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        engine.setItems(3, new int[]{200, 20, 300}, new int[]{10, 10, 10}, null);
+
+        assertEquals(3, engine.breakLines(100));
+        assertEquals(0, engine.getLineStart(0));
+        assertEquals(1, engine.getLineEnd(0));
+        assertEquals(300, engine.getContentWidth());
+    }
+
+    @Test
+    public void breakLines_skipsGoneItems() throws Exception {
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        engine.setItems(4, new int[]{50, 50, 50, 50}, new int[]{10, 10, 10, 10}, null);
+        engine.setItemGone(1);
+        engine.setItemGone(3);
+
+        assertEquals(1, engine.breakLines(100));
+        assertEquals(4, engine.getLineEnd(0));
+        assertEquals(100, engine.getLineWidth(0));
+    }
+
+    @Test
+    public void layout_appliesGravity() throws Exception {
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        engine.setItems(3, new int[]{40, 40, 20}, new int[]{10, 10, 10}, new int[]{2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3});
+        engine.breakLines(100);
+
+        engine.layout(FlowLayoutEngine.LEFT, 10, 20, 100);
+        assertEquals(12, engine.getItemLeft(0));
+        assertEquals(23, engine.getItemTop(0));
+        assertEquals(56, engine.getItemLeft(1));
+        assertEquals(12, engine.getItemLeft(2));
+        assertEquals(39, engine.getItemTop(2));
+
+        engine.layout(FlowLayoutEngine.CENTER, 10, 20, 100);
+        assertEquals(18, engine.getItemLeft(0));
+        assertEquals(50, engine.getItemLeft(2));
+
+        engine.layout(FlowLayoutEngine.RIGHT, 10, 20, 100);
+        assertEquals(24, engine.getItemLeft(0));
+        assertEquals(88, engine.getItemLeft(2));
+    }
+
+    @Test
+    public void breakLines_addsSpacingBetweenItemsAndLines() throws Exception {
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        engine.setSpacing(10, 5);
+        engine.setItems(3, new int[]{40, 40, 40}, new int[]{10, 10, 10}, null);
+
+        assertEquals(2, engine.breakLines(90));
+        assertEquals(90, engine.getLineWidth(0));
+        assertEquals(15, engine.getLineTop(1));
+        assertEquals(25, engine.getContentHeight());
+        engine.layout(FlowLayoutEngine.LEFT, 0, 0, 90);
+        assertEquals(50, engine.getItemLeft(1));
+        assertEquals(15, engine.getItemTop(2));
+
+        assertEquals(3, engine.breakLines(89));
+    }
+
+    @Test
+    public void breakLines_stopsAtMaxLines() throws Exception {
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        int[] widths = new int[10];
+        int[] heights = new int[10];
+        Arrays.fill(widths, 40);
+        Arrays.fill(heights, 10);
+        engine.setItems(10, widths, heights, null);
+        engine.setMaxLines(2);
+
+        assertEquals(2, engine.breakLines(100));
+        assertEquals(4, engine.getOverflowStart());
+        assertEquals(20, engine.getContentHeight());
+
+        // 超出最大行数的item变化不影响换行结果
+        engine.setItem(8, 90, 10, 0, 0, 0, 0);
+        assertEquals(2, engine.breakLines(100));
+        assertEquals(4, engine.getOverflowStart());
+
+        engine.setItem(1, 90, 10, 0, 0, 0, 0);
+        assertEquals(2, engine.breakLines(100));
+        assertEquals(2, engine.getOverflowStart());
+
+        engine.setMaxLines(0);
+        assertEquals(7, engine.breakLines(100));
+        assertEquals(10, engine.getOverflowStart());
+    }
+
+    @Test
+    public void layout_distributesFreeSpace() throws Exception {
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        engine.setItems(4, new int[]{20, 20, 20, 90}, new int[]{10, 10, 10, 10}, null);
+        engine.breakLines(100);
+
+        engine.layout(FlowLayoutEngine.SPACE_BETWEEN, FlowLayoutEngine.ALIGN_TOP, 0, 0, 100);
+        assertEquals(0, engine.getItemLeft(0));
+        assertEquals(40, engine.getItemLeft(1));
+        assertEquals(80, engine.getItemLeft(2));
+        assertEquals(0, engine.getItemLeft(3));
+
+        engine.layout(FlowLayoutEngine.SPACE_AROUND, FlowLayoutEngine.ALIGN_TOP, 0, 0, 100);
+        assertEquals(6, engine.getItemLeft(0));
+        assertEquals(40, engine.getItemLeft(1));
+        assertEquals(73, engine.getItemLeft(2));
+        assertEquals(5, engine.getItemLeft(3));
+
+        engine.layout(FlowLayoutEngine.SPACE_EVENLY, FlowLayoutEngine.ALIGN_TOP, 0, 0, 100);
+        assertEquals(10, engine.getItemLeft(0));
+        assertEquals(40, engine.getItemLeft(1));
+        assertEquals(70, engine.getItemLeft(2));
+        assertEquals(5, engine.getItemLeft(3));
+    }
+
+    @Test
+    public void layout_alignsItemsInLine() throws Exception {
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        engine.setItems(3, new int[]{20, 20, 20}, new int[]{10, 30, 20}, null);
+        engine.breakLines(100);
+
+        engine.layout(FlowLayoutEngine.LEFT, FlowLayoutEngine.ALIGN_CENTER, 0, 0, 100);
+        assertEquals(10, engine.getItemTop(0));
+        assertEquals(0, engine.getItemTop(1));
+        assertEquals(5, engine.getItemTop(2));
+
+        engine.layout(FlowLayoutEngine.LEFT, FlowLayoutEngine.ALIGN_BOTTOM, 0, 0, 100);
+        assertEquals(20, engine.getItemTop(0));
+        assertEquals(0, engine.getItemTop(1));
+        assertEquals(10, engine.getItemTop(2));
+    }
+
+    @Test
+    public void getLineForOffset_findsLineByTop() throws Exception {
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        engine.setItems(4, new int[]{60, 60, 60, 60}, new int[]{10, 20, 30, 40}, null);
+        engine.breakLines(100);
+
+        assertEquals(0, engine.getLineForOffset(-5));
+        assertEquals(0, engine.getLineForOffset(9));
+        assertEquals(1, engine.getLineForOffset(10));
+        assertEquals(2, engine.getLineForOffset(59));
+        assertEquals(3, engine.getLineForOffset(60));
+        assertEquals(3, engine.getLineForOffset(1000));
+    }
+
+    @Test
+    public void findItemAt_hitsItemBoundsOnly() throws Exception {
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        engine.setItems(4, new int[]{30, 30, 30, 30}, new int[]{10, 20, 10, 10},
+                new int[]{5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5});
+        engine.breakLines(100);
+        engine.layout(FlowLayoutEngine.LEFT, 10, 20, 120);
+
+        assertEquals(0, engine.findItemAt(15, 25));
+        assertEquals(0, engine.findItemAt(44, 34));
+        assertEquals(1, engine.findItemAt(55, 44));
+        assertEquals(2, engine.findItemAt(20, 55));
+        assertEquals(3, engine.findItemAt(60, 60));
+        // margin、行内空白和内容区域外
+        assertEquals(-1, engine.findItemAt(14, 25));
+        assertEquals(-1, engine.findItemAt(45, 25));
+        assertEquals(-1, engine.findItemAt(20, 36));
+        assertEquals(-1, engine.findItemAt(20, 19));
+        assertEquals(-1, engine.findItemAt(60, 70));
+    }
+
+    @Test
+    public void findItemAt_skipsGoneItems() throws Exception {
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        engine.setItems(4, new int[]{30, 30, 30, 30}, new int[]{10, 10, 10, 10},
+                new int[]{5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5});
+        engine.setItemGone(1);
+        engine.breakLines(100);
+        engine.layout(FlowLayoutEngine.LEFT, 10, 20, 120);
+
+        assertEquals(2, engine.findItemAt(60, 30));
+        assertEquals(-1, engine.findItemAt(50, 30));
+        assertEquals(3, engine.findItemAt(20, 50));
+    }
+
+    @Test
+    public void breakLines_partialMatchesFullBreak() throws Exception {
+        Random random = new Random(7);
+        FlowLayoutEngine partial = new FlowLayoutEngine();
+        int count = 200;
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            widths[i] = 10 + random.nextInt(80);
+            heights[i] = 10 + random.nextInt(20);
+        }
+        partial.setItems(count, widths, heights, null);
+        partial.breakLines(300);
+        for (int round = 0; round < 300; round++) {
+            int index = random.nextInt(count);
+            switch (random.nextInt(3)) {
+                case 0:
+                    widths[index] = 10 + random.nextInt(80);
+                    partial.setItem(index, widths[index], heights[index], 0, 0, 0, 0);
+                    break;
+                case 1:
+                    partial.setItemGone(index);
+                    widths[index] = -1;
+                    break;
+                default:
+                    count = 150 + random.nextInt(100);
+                    widths = Arrays.copyOf(widths, count);
+                    heights = Arrays.copyOf(heights, count);
+                    partial.setItemCount(count);
+                    for (int i = 0; i < count; i++) {
+                        if (widths[i] == 0) widths[i] = 10 + random.nextInt(80);
+                        if (heights[i] == 0) heights[i] = 10 + random.nextInt(20);
+                        if (widths[i] < 0) partial.setItemGone(i);
+                        else partial.setItem(i, widths[i], heights[i], 0, 0, 0, 0);
+                    }
+                    break;
+            }
+            FlowLayoutEngine full = new FlowLayoutEngine();
+            full.setItemCount(count);
+            for (int i = 0; i < count; i++) {
+                if (widths[i] < 0) full.setItemGone(i);
+                else full.setItem(i, widths[i], heights[i], 0, 0, 0, 0);
+            }
+            assertEquals(full.breakLines(300), partial.breakLines(300));
+            for (int line = 0; line < full.getLineCount(); line++) {
+                assertEquals(full.getLineStart(line), partial.getLineStart(line));
+                assertEquals(full.getLineEnd(line), partial.getLineEnd(line));
+                assertEquals(full.getLineWidth(line), partial.getLineWidth(line));
+                assertEquals(full.getLineTop(line), partial.getLineTop(line));
+            }
+            assertEquals(full.getContentWidth(), partial.getContentWidth());
+            assertEquals(full.getContentHeight(), partial.getContentHeight());
+        }
+    }
+
+    @Test
+    public void breakLines_handlesMillionsOfItems() throws Exception {
+        int count = 2000000;
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            widths[i] = 10 + i % 7;
+            heights[i] = 20;
+        }
+        FlowLayoutEngine engine = new FlowLayoutEngine();
+        engine.setItems(count, widths, heights, null);
+        int lines = engine.breakLines(1080);
+        engine.layout(FlowLayoutEngine.LEFT, 0, 0, 1080);
+
+        assertEquals(count, engine.getLineEnd(lines - 1));
+        assertEquals(lines * 20, engine.getContentHeight());
+        for (int i = 1; i < lines; i++) {
+            assertEquals(engine.getLineEnd(i - 1), engine.getLineStart(i));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package top.cokernut.customview.view;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * LongHashSet的增删查测试，直接在JVM上运行
+ */
+public class LongHashSetTest {
+
+    @Test
+    public void addRemove_basic() throws Exception {
+        LongHashSet set = new LongHashSet();
+        assertTrue(set.add(1L));
+        assertTrue(set.add(-1L));
+        assertTrue(set.add(0L));
+        assertFalse(set.add(1L));
+        assertEquals(3, set.size());
+        assertTrue(set.contains(-1L));
+        assertFalse(set.contains(2L));
+
+        assertTrue(set.remove(1L));
+        assertFalse(set.remove(1L));
+        assertEquals(2, set.size());
+        long[] values = set.toArray();
+        Arrays.sort(values);
+        assertArrayEquals(new long[]{-1L, 0L}, values);
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(0L));
+    }
+
+    @Test
+    public void randomOperations_matchHashSet() throws Exception {
+        Random random = new Random(7);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 100000; i++) {
+            // 取值范围较小，保证有大量冲突和删除
+            long key = random.nextInt(2000) * 64L;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), set.remove(key));
+            } else {
+                assertEquals(expected.add(key), set.add(key));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        for (long key = 0; key < 2000 * 64L; key += 32) {
+            assertEquals(expected.contains(key), set.contains(key));
+        }
+    }
+}
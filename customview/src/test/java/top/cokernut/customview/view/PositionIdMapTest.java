@@ -0,0 +1,63 @@
+package top.cokernut.customview.view;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * PositionIdMap随标签插入、移除、移动平移，移除时同步移除id，直接在JVM上运行
+ */
+public class PositionIdMapTest {
+
+    @Test
+    public void removeRange_removesIdsOfRemovedPositions() throws Exception {
+        PositionIdMap map = new PositionIdMap();
+        LongHashSet ids = new LongHashSet();
+        for (int position : new int[]{1, 3, 5, 7}) {
+            map.put(position, position * 100L);
+            ids.add(position * 100L);
+        }
+        map.removeRange(3, 6, ids);
+        assertEquals(2, map.size());
+        assertTrue(ids.contains(100L));
+        assertFalse(ids.contains(300L));
+        assertFalse(ids.contains(500L));
+        assertTrue(ids.contains(700L));
+
+        // 后面的标签平移之后仍然能按新的position移除
+        map.offset(6, Integer.MAX_VALUE, -3);
+        map.remove(4, ids);
+        assertFalse(ids.contains(700L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void move_keepsIdWithItem() throws Exception {
+        PositionIdMap map = new PositionIdMap();
+        LongHashSet ids = new LongHashSet();
+        map.put(0, 10L);
+        map.put(2, 12L);
+        ids.add(10L);
+        ids.add(12L);
+        // 0移动到3：1到3依次前移一位
+        map.move(0, 3);
+        map.remove(1, ids);
+        assertFalse(ids.contains(12L));
+        map.remove(3, ids);
+        assertFalse(ids.contains(10L));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void offset_insertBeforeShiftsPositions() throws Exception {
+        PositionIdMap map = new PositionIdMap();
+        LongHashSet ids = new LongHashSet();
+        map.put(4, 40L);
+        ids.add(40L);
+        map.offset(2, Integer.MAX_VALUE, 3);
+        map.remove(4, ids);
+        assertTrue(ids.contains(40L));
+        map.removeRange(7, 8, ids);
+        assertFalse(ids.contains(40L));
+    }
+}
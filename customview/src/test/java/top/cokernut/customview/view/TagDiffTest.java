@@ -0,0 +1,240 @@
+package top.cokernut.customview.view;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * TagDiff测试：按顺序执行差分结果后必须能从旧数据得到新数据
+ */
+public class TagDiffTest {
+    /**
+     * 标签id相同即为同一个标签，内容用label比较
+     */
+    private static class Tag {
+        final int id;
+        final String label;
+
+        Tag(int id, String label) {
+            this.id = id;
+            this.label = label;
+        }
+    }
+
+    private static final TagDiff.ItemCallback<Tag> CALLBACK = new TagDiff.ItemCallback<Tag>() {
+        @Override
+        public boolean areItemsTheSame(Tag oldItem, Tag newItem) {
+            return oldItem.id == newItem.id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(Tag oldItem, Tag newItem) {
+            return oldItem.label.equals(newItem.label);
+        }
+    };
+
+    /**
+     * 在旧数据上回放操作：插入的位置用null占位，变化的位置记录下来
+     */
+    private static class Recorder implements TagDiff.UpdateCallback {
+        final List<Tag> items;
+        final List<Tag> changed = new ArrayList<>();
+        int inserted;
+        int removed;
+
+        Recorder(List<Tag> oldList) {
+            items = new ArrayList<>(oldList);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            inserted += count;
+            for (int i = 0; i < count; i++) items.add(position, null);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            removed += count;
+            for (int i = 0; i < count; i++) items.remove(position);
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            for (int i = 0; i < count; i++) changed.add(items.get(position + i));
+        }
+    }
+
+    private static void assertTransforms(List<Tag> oldList, List<Tag> newList) {
+        Recorder recorder = new Recorder(oldList);
+        TagDiff.calculate(oldList, newList, CALLBACK).dispatchUpdatesTo(recorder);
+        assertEquals(newList.size(), recorder.items.size());
+        for (int i = 0; i < newList.size(); i++) {
+            Tag tag = recorder.items.get(i);
+            if (tag != null) {
+                assertEquals(newList.get(i).id, tag.id);
+                assertEquals(tag.label.equals(newList.get(i).label), !recorder.changed.contains(tag));
+            }
+        }
+        assertEquals(oldList.size() + recorder.inserted - recorder.removed, newList.size());
+    }
+
+    /**
+     * 和TagFlowLayout一样在通知时从新数据中读取：插入和变化的标签按position取新数据
+     */
+    private static void assertAppliesWithNewList(List<Tag> oldList, final List<Tag> newList) {
+        final List<Tag> items = new ArrayList<>(oldList);
+        TagDiff.calculate(oldList, newList, CALLBACK).dispatchUpdatesTo(new TagDiff.UpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                for (int i = position; i < position + count; i++) items.add(i, newList.get(i));
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                for (int i = 0; i < count; i++) items.remove(position);
+            }
+
+            @Override
+            public void onChanged(int position, int count) {
+                for (int i = position; i < position + count; i++) {
+                    assertEquals(newList.get(i).id, items.get(i).id);
+                    items.set(i, newList.get(i));
+                }
+            }
+        });
+        assertEquals(newList.size(), items.size());
+        for (int i = 0; i < newList.size(); i++) {
+            assertEquals(newList.get(i).id, items.get(i).id);
+            assertEquals(newList.get(i).label, items.get(i).label);
+        }
+    }
+
+    private static List<Tag> tags(int... ids) {
+        List<Tag> list = new ArrayList<>();
+        for (int id : ids) list.add(new Tag(id, "tag" + id));
+        return list;
+    }
+
+    @Test
+    public void calculate_singleInsertOnlyInsertsOne() throws Exception {
+        final List<int[]> ops = new ArrayList<>();
+        TagDiff.calculate(tags(1, 2, 3, 4), tags(1, 2, 9, 3, 4), CALLBACK).dispatchUpdatesTo(new TagDiff.UpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                ops.add(new int[]{0, position, count});
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                ops.add(new int[]{1, position, count});
+            }
+
+            @Override
+            public void onChanged(int position, int count) {
+                ops.add(new int[]{2, position, count});
+            }
+        });
+        assertEquals(1, ops.size());
+        assertArrayEquals(new int[]{0, 2, 1}, ops.get(0));
+    }
+
+    @Test
+    public void calculate_detectsContentChanges() throws Exception {
+        List<Tag> newList = tags(1, 2, 3);
+        newList.set(1, new Tag(2, "renamed"));
+        Recorder recorder = new Recorder(tags(1, 2, 3));
+        TagDiff.calculate(tags(1, 2, 3), newList, CALLBACK).dispatchUpdatesTo(recorder);
+        assertEquals(0, recorder.inserted);
+        assertEquals(0, recorder.removed);
+        assertEquals(1, recorder.changed.size());
+        assertEquals(2, recorder.changed.get(0).id);
+    }
+
+    @Test
+    public void calculate_handlesEmptyLists() throws Exception {
+        assertTransforms(tags(), tags(1, 2));
+        assertTransforms(tags(1, 2), tags());
+        assertTransforms(tags(), tags());
+    }
+
+    @Test
+    public void calculate_randomEditsTransformOldIntoNew() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            List<Tag> oldList = new ArrayList<>();
+            int nextId = 0;
+            int size = random.nextInt(60);
+            for (int i = 0; i < size; i++) oldList.add(new Tag(nextId++, "tag"));
+            List<Tag> newList = new ArrayList<>(oldList);
+            int edits = random.nextInt(20);
+            for (int e = 0; e < edits; e++) {
+                int op = random.nextInt(3);
+                if (op == 0 || newList.isEmpty()) {
+                    newList.add(random.nextInt(newList.size() + 1), new Tag(nextId++, "tag"));
+                } else if (op == 1) {
+                    newList.remove(random.nextInt(newList.size()));
+                } else {
+                    int pos = random.nextInt(newList.size());
+                    newList.set(pos, new Tag(newList.get(pos).id, "changed" + e));
+                }
+            }
+            assertTransforms(oldList, newList);
+        }
+    }
+
+    @Test
+    public void dispatch_positionsReferToNewList() throws Exception {
+        // [A,B,C] -> [X,A,B,C,Y]
+        assertAppliesWithNewList(tags(1, 2, 3), tags(9, 1, 2, 3, 8));
+        // [A,B] -> [X,A,B2]
+        List<Tag> newList = tags(9, 1, 2);
+        newList.set(2, new Tag(2, "renamed"));
+        assertAppliesWithNewList(tags(1, 2), newList);
+        assertAppliesWithNewList(tags(1, 2, 3, 4), tags(2, 9, 4, 7));
+    }
+
+    @Test
+    public void dispatch_randomEditsApplyWithNewList() throws Exception {
+        Random random = new Random(7);
+        for (int round = 0; round < 500; round++) {
+            List<Tag> oldList = new ArrayList<>();
+            int nextId = 0;
+            int size = random.nextInt(40);
+            for (int i = 0; i < size; i++) oldList.add(new Tag(nextId++, "tag"));
+            List<Tag> newList = new ArrayList<>(oldList);
+            int edits = random.nextInt(15);
+            for (int e = 0; e < edits; e++) {
+                int op = random.nextInt(4);
+                if (op == 0 || newList.isEmpty()) {
+                    newList.add(random.nextInt(newList.size() + 1), new Tag(nextId++, "tag"));
+                } else if (op == 1) {
+                    newList.remove(random.nextInt(newList.size()));
+                } else if (op == 2) {
+                    int pos = random.nextInt(newList.size());
+                    newList.set(pos, new Tag(newList.get(pos).id, "changed" + e));
+                } else {
+                    // 移动按移除再插入处理
+                    newList.add(random.nextInt(newList.size()), newList.remove(random.nextInt(newList.size())));
+                }
+            }
+            assertAppliesWithNewList(oldList, newList);
+        }
+    }
+
+    @Test
+    public void calculate_largeReplacementFallsBack() throws Exception {
+        int[] oldIds = new int[3000];
+        int[] newIds = new int[3000];
+        for (int i = 0; i < 3000; i++) {
+            oldIds[i] = i;
+            newIds[i] = i + 3000;
+        }
+        assertTransforms(tags(oldIds), tags(newIds));
+        assertTransforms(tags(1, 2, 3), Arrays.asList(new Tag(3, "tag3"), new Tag(2, "tag2"), new Tag(1, "tag1")));
+    }
+}
@@ -0,0 +1,127 @@
+package top.cokernut.customview.view;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * TagSelection的增删、平移和快照测试，直接在JVM上运行
+ */
+public class TagSelectionTest {
+
+    @Test
+    public void addRemove_tracksSize() throws Exception {
+        TagSelection selection = new TagSelection();
+        assertTrue(selection.add(3));
+        assertTrue(selection.add(200));
+        assertFalse(selection.add(3));
+        assertFalse(selection.add(-1));
+        assertEquals(2, selection.size());
+        assertTrue(selection.contains(200));
+        assertFalse(selection.contains(64));
+
+        assertTrue(selection.remove(3));
+        assertFalse(selection.remove(3));
+        assertEquals(1, selection.size());
+        assertEquals(200, selection.nextSetBit(0));
+        assertEquals(200, selection.prevSetBit(10000));
+        assertEquals(-1, selection.prevSetBit(199));
+    }
+
+    @Test
+    public void snapshot_isNotAffectedByLaterChanges() throws Exception {
+        TagSelection selection = new TagSelection();
+        selection.add(1);
+        selection.add(65);
+        TagSelection.Snapshot snapshot = selection.snapshot();
+        assertSame(snapshot, selection.snapshot());
+
+        selection.add(2);
+        selection.remove(65);
+        assertEquals(2, snapshot.size());
+        assertTrue(snapshot.contains(65));
+        assertFalse(snapshot.contains(2));
+        assertTrue(snapshot.contains((Object) 1));
+        assertArrayEquals(new int[]{1, 65}, snapshot.toIntArray());
+        assertEquals(new HashSet<>(Arrays.asList(1, 65)), new HashSet<>(snapshot));
+
+        selection.clear();
+        assertEquals(2, snapshot.size());
+        assertTrue(selection.isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshot_isReadOnly() throws Exception {
+        TagSelection selection = new TagSelection();
+        selection.add(1);
+        selection.snapshot().add(2);
+    }
+
+    @Test
+    public void longArray_roundTrips() throws Exception {
+        TagSelection selection = new TagSelection();
+        selection.add(0);
+        selection.add(63);
+        selection.add(9999);
+        long[] words = selection.toLongArray();
+        assertEquals(9999 / 64 + 1, words.length);
+
+        TagSelection restored = TagSelection.valueOf(words);
+        assertEquals(3, restored.size());
+        assertArrayEquals(new int[]{0, 63, 9999}, restored.toIntArray());
+        assertEquals(0, new TagSelection().toLongArray().length);
+    }
+
+    @Test
+    public void offset_matchesReferenceSet() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            TagSelection selection = new TagSelection();
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < 50; i++) {
+                int pos = random.nextInt(300);
+                selection.add(pos);
+                expected.add(pos);
+            }
+            int start = random.nextInt(300);
+            int count = 1 + random.nextInt(40);
+            if (random.nextBoolean()) {
+                // 插入
+                selection.offset(start, Integer.MAX_VALUE, count);
+                Set<Integer> offset = new HashSet<>();
+                for (int pos : expected) offset.add(pos >= start ? pos + count : pos);
+                expected = offset;
+            } else {
+                // 移除
+                selection.removeRange(start, start + count);
+                selection.offset(start + count, Integer.MAX_VALUE, -count);
+                Set<Integer> offset = new HashSet<>();
+                for (int pos : expected) {
+                    if (pos >= start && pos < start + count) continue;
+                    offset.add(pos >= start + count ? pos - count : pos);
+                }
+                expected = offset;
+            }
+            assertEquals(expected.size(), selection.size());
+            assertEquals(expected, new HashSet<>(selection.snapshot()));
+        }
+    }
+
+    @Test
+    public void offset_moveKeepsOtherPositions() throws Exception {
+        TagSelection selection = new TagSelection();
+        selection.add(2);
+        selection.add(5);
+        selection.add(7);
+        // 把5移动到1
+        boolean selected = selection.remove(5);
+        selection.offset(1, 5, 1);
+        if (selected) selection.add(1);
+        assertArrayEquals(new int[]{1, 3, 7}, selection.toIntArray());
+    }
+}